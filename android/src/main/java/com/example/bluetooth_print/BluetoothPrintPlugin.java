@@ -15,6 +15,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
@@ -32,9 +34,13 @@ import io.flutter.plugin.common.MethodChannel.Result;
 import io.flutter.plugin.common.PluginRegistry.RequestPermissionsResultListener;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * BluetoothPrintPlugin
@@ -46,6 +52,8 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
   private Context context;
   private ThreadPool threadPool;
   private String curMacAddress;
+  private final Map<String, PrintTemplate> templates = new HashMap<>();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
   private static final String NAMESPACE = "bluetooth_print";
   private MethodChannel channel;
@@ -169,7 +177,12 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
         result.success(mBluetoothAdapter.isEnabled());
         break;
       case "isConnected":
-        result.success(threadPool != null);
+        if (call.argument("address") != null) {
+          DeviceConnFactoryManager deviceConnFactoryManager = getDeviceConnFactoryManager(call);
+          result.success(deviceConnFactoryManager != null && deviceConnFactoryManager.getConnState());
+        } else {
+          result.success(threadPool != null);
+        }
         break;
       case "startScan":
       {
@@ -191,7 +204,13 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
         connect(call, result);
         break;
       case "disconnect":
-        result.success(disconnect());
+      {
+        String address = call.argument("address");
+        result.success(disconnect(address != null ? address : curMacAddress));
+        break;
+      }
+      case "connectedDevices":
+        result.success(DeviceConnFactoryManager.getConnectedAddresses());
         break;
       case "destroy":
         result.success(destroy());
@@ -201,12 +220,56 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
       case "printLabel":
         print(call, result);
         break;
+      case "printBatch":
+        printBatch(call, result);
+        break;
       case "printTest":
-        printTest(result);
+        printTest(call, result);
         break;
       case "openCashDrawer":
-          openCashDrawer(result);
+          openCashDrawer(call, result);
           break;
+      case "registerTemplate":
+        registerTemplate(call, result);
+        break;
+      case "unregisterTemplate":
+        templates.remove((String) call.argument("id"));
+        result.success(true);
+        break;
+      case "printTemplate":
+        printTemplate(call, result);
+        break;
+      case "cacheStats":
+        cacheStats(result);
+        break;
+      case "resetAssets":
+        resetAssets(call, result);
+        break;
+      case "setCodePage":
+        setCodePage(call, result);
+        break;
+      case "connectionStats":
+      {
+        DeviceConnFactoryManager deviceConnFactoryManager = getDeviceConnFactoryManager(call);
+        if (deviceConnFactoryManager == null) {
+          result.error("not connect", "state not right", null);
+        } else {
+          result.success(deviceConnFactoryManager.getConnectionStats());
+        }
+        break;
+      }
+      case "queueStats":
+      {
+        DeviceConnFactoryManager deviceConnFactoryManager = getDeviceConnFactoryManager(call);
+        if (deviceConnFactoryManager == null) {
+          result.error("not connect", "state not right", null);
+        } else {
+          Map<String, Object> stats = deviceConnFactoryManager.getJobQueue().getStats();
+          stats.put("executor", ThreadPool.getInstantiation().getStats());
+          result.success(stats);
+        }
+        break;
+      }
       default:
         result.notImplemented();
         break;
@@ -283,6 +346,62 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
             });
   }
 
+  /**
+   * 打印机应答事件转发到 Dart；缓冲区应答随流控频繁出现，不转发
+   */
+  private final PrinterStatusListener printerStatusListener = new PrinterStatusListener() {
+    @Override
+    public void onPrinterCommand(String address, PrinterCommand command) {
+      Map<String, Object> ret = new HashMap<>();
+      ret.put("address", address);
+      ret.put("event", "command");
+      ret.put("command", command.name());
+      invokePrinterStatusUIThread(ret);
+    }
+
+    @Override
+    public void onRealtimeStatus(String address, int status) {
+      Map<String, Object> ret = new HashMap<>();
+      ret.put("address", address);
+      ret.put("event", "status");
+      ret.put("paperOut", (status & STATUS_PAPER_OUT) != 0);
+      ret.put("coverOpen", (status & STATUS_COVER_OPEN) != 0);
+      ret.put("error", (status & STATUS_ERROR) != 0);
+      ret.put("paperJam", (status & STATUS_PAPER_JAM) != 0);
+      ret.put("ribbonOut", (status & STATUS_RIBBON_OUT) != 0);
+      ret.put("paused", (status & STATUS_PAUSED) != 0);
+      ret.put("printing", (status & STATUS_PRINTING) != 0);
+      invokePrinterStatusUIThread(ret);
+    }
+
+    @Override
+    public void onBufferStatus(String address) {
+    }
+
+    @Override
+    public void onDisconnected(String address) {
+      Map<String, Object> ret = new HashMap<>();
+      ret.put("address", address);
+      ret.put("event", "disconnected");
+      invokePrinterStatusUIThread(ret);
+    }
+  };
+
+  private void invokePrinterStatusUIThread(final Map<String, Object> ret) {
+    if (activity == null) {
+      return;
+    }
+    activity.runOnUiThread(
+            new Runnable() {
+              @Override
+              public void run() {
+                if (channel != null) {
+                  channel.invokeMethod("PrinterStatus", ret);
+                }
+              }
+            });
+  }
+
   private ScanCallback mScanCallback = new ScanCallback() {
     @Override
     public void onScanResult(int callbackType, ScanResult result) {
@@ -312,7 +431,7 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
   }
 
   /**
-   * 连接
+   * 连接，已连接的其它打印机保持连接，最近连接的打印机作为未指定 address 时的默认打印机
    */
   private void connect(MethodCall call, Result result){
     Map<String, Object> args = call.arguments();
@@ -320,25 +439,35 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
       final String address = (String) args.get("address");
       this.curMacAddress = address;
 
-      disconnect();
+      DeviceConnFactoryManager previous = DeviceConnFactoryManager.getDeviceConnFactoryManagers().get(address);
+      if (previous != null) {
+        // 旧连接排队中的任务不再执行，等待结果的任务收到取消通知；先于 disconnect 清空，关闭重连恢复队列时不会再启动任务
+        previous.getJobQueue().clear();
+      }
+      disconnect(address);
 
-      new DeviceConnFactoryManager.Build()
+      final DeviceConnFactoryManager deviceConnFactoryManager = new DeviceConnFactoryManager.Build()
               //设置连接方式
               .setConnMethod(DeviceConnFactoryManager.CONN_METHOD.BLUETOOTH)
               //设置连接的蓝牙mac地址
               .setMacAddress(address)
+              .setContext(context)
               .build();
+      deviceConnFactoryManager.setStatusListener(printerStatusListener);
+      deviceConnFactoryManager.setAutoReconnect(!Boolean.FALSE.equals(args.get("autoReconnect")));
 
       //打开端口
       threadPool = ThreadPool.getInstantiation();
-      threadPool.addSerialTask(new Runnable() {
+      boolean submitted = submit(deviceConnFactoryManager, new Runnable() {
         @Override
         public void run() {
-          DeviceConnFactoryManager.getDeviceConnFactoryManagers().get(address).openPort();
+          deviceConnFactoryManager.openPort();
         }
-      });
+      }, PrinterJobQueue.Priority.NORMAL, result);
 
-      result.success(true);
+      if (submitted) {
+        result.success(true);
+      }
     } else {
       result.error("******************* invalid_argument", "argument 'address' not found", null);
     }
@@ -348,10 +477,15 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
   /**
    * 关闭连接
    */
-  private boolean disconnect(){
-    DeviceConnFactoryManager deviceConnFactoryManager = DeviceConnFactoryManager.getDeviceConnFactoryManagers().get(curMacAddress);
+  private boolean disconnect(String address){
+    DeviceConnFactoryManager deviceConnFactoryManager = DeviceConnFactoryManager.getDeviceConnFactoryManagers().get(address);
+    if (deviceConnFactoryManager != null) {
+      deviceConnFactoryManager.setAutoReconnect(false);
+    }
     if(deviceConnFactoryManager != null && deviceConnFactoryManager.mPort != null) {
-      deviceConnFactoryManager.reader.cancel();
+      if (deviceConnFactoryManager.reader != null) {
+        deviceConnFactoryManager.reader.cancel();
+      }
       deviceConnFactoryManager.closePort();
       deviceConnFactoryManager.mPort = null;
     }
@@ -359,6 +493,27 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
     return true;
   }
 
+  /**
+   * 提交到打印机任务队列，队列已满时向 Dart 返回 queue_full 错误
+   */
+  private boolean submit(DeviceConnFactoryManager deviceConnFactoryManager, Runnable task, PrinterJobQueue.Priority priority, Result result) {
+    try {
+      deviceConnFactoryManager.getJobQueue().execute(task, priority);
+      return true;
+    } catch (RejectedExecutionException e) {
+      result.error("queue_full", e.getMessage(), null);
+      return false;
+    }
+  }
+
+  /**
+   * 参数中 address 对应的打印机，未指定时为最近连接的打印机
+   */
+  private DeviceConnFactoryManager getDeviceConnFactoryManager(MethodCall call) {
+    String address = call.argument("address");
+    return DeviceConnFactoryManager.getDeviceConnFactoryManagers().get(address != null ? address : curMacAddress);
+  }
+
   private boolean destroy() {
     DeviceConnFactoryManager.closeAllPort();
     if (threadPool != null) {
@@ -368,17 +523,16 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
     return true;
   }
 
-  private void printTest(Result result) {
-    final DeviceConnFactoryManager deviceConnFactoryManager = DeviceConnFactoryManager.getDeviceConnFactoryManagers().get(curMacAddress);
-    if (deviceConnFactoryManager == null || !deviceConnFactoryManager.getConnState()) {
+  private void printTest(MethodCall call, Result result) {
+    final DeviceConnFactoryManager deviceConnFactoryManager = getDeviceConnFactoryManager(call);
+    if (deviceConnFactoryManager == null || !deviceConnFactoryManager.isAcceptingJobs()) {
       result.error("not connect", "state not right", null);
+      return;
     }
 
-    threadPool = ThreadPool.getInstantiation();
-    threadPool.addSerialTask(new Runnable() {
+    submit(deviceConnFactoryManager, new Runnable() {
       @Override
       public void run() {
-        assert deviceConnFactoryManager != null;
         PrinterCommand printerCommand = deviceConnFactoryManager.getCurrentPrinterCommand();
 
         if (printerCommand == PrinterCommand.ESC) {
@@ -389,19 +543,18 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
           deviceConnFactoryManager.sendByteDataImmediately(FactoryCommand.printSelfTest(FactoryCommand.printerMode.CPCL));
         }
       }
-    });
+    }, PrinterJobQueue.parsePriority(call.argument("priority")), result);
 
   }
 
-  private void openCashDrawer(Result result) {
-      final DeviceConnFactoryManager deviceConnFactoryManager = DeviceConnFactoryManager.getDeviceConnFactoryManagers().get(curMacAddress);
-      if (deviceConnFactoryManager == null || !deviceConnFactoryManager.getConnState()) {
+  private void openCashDrawer(MethodCall call, Result result) {
+      final DeviceConnFactoryManager deviceConnFactoryManager = getDeviceConnFactoryManager(call);
+      if (deviceConnFactoryManager == null || !deviceConnFactoryManager.isAcceptingJobs()) {
           result.error("not_connected", "Printer is not connected", null);
           return;
       }
 
-      threadPool = ThreadPool.getInstantiation();
-      threadPool.addSerialTask(new Runnable() {
+      submit(deviceConnFactoryManager, new Runnable() {
           @Override
           public void run() {
               try {
@@ -412,48 +565,305 @@ public class BluetoothPrintPlugin implements FlutterPlugin, ActivityAware, Metho
                   result.error("open_cash_drawer_error", e.getMessage(), null);
               }
           }
-      });
+      }, PrinterJobQueue.Priority.HIGH, result);
   }
 
   @SuppressWarnings("unchecked")
   private void print(MethodCall call, Result result) {
     Map<String, Object> args = call.arguments();
 
-    final DeviceConnFactoryManager deviceConnFactoryManager = DeviceConnFactoryManager.getDeviceConnFactoryManagers().get(curMacAddress);
-    if (deviceConnFactoryManager == null || !deviceConnFactoryManager.getConnState()) {
+    final DeviceConnFactoryManager deviceConnFactoryManager = getDeviceConnFactoryManager(call);
+    if (deviceConnFactoryManager == null || !deviceConnFactoryManager.isAcceptingJobs()) {
       result.error("not connect", "state not right", null);
+      return;
     }
 
     if (args != null && args.containsKey("config") && args.containsKey("data")) {
       final Map<String,Object> config = (Map<String,Object>)args.get("config");
-      final List<Map<String,Object>> list = (List<Map<String,Object>>)args.get("data");
-      if(list == null){
+      final LineReader lines;
+      try {
+        lines = LineReader.of(args.get("data"));
+      } catch (IllegalArgumentException e) {
+        result.error("invalid data", e.getMessage(), null);
+        return;
+      }
+      if(lines == null){
         return;
       }
 
-      threadPool = ThreadPool.getInstantiation();
-      threadPool.addSerialTask(new Runnable() {
+      final PrintJob job = new PrintJob(deviceConnFactoryManager, config, lines);
+      if (!submit(deviceConnFactoryManager, new Runnable() {
         @Override
         public void run() {
-          assert deviceConnFactoryManager != null;
-          PrinterCommand printerCommand = deviceConnFactoryManager.getCurrentPrinterCommand();
-
-          if (printerCommand == PrinterCommand.ESC) {
-            deviceConnFactoryManager.sendDataImmediately(PrintContent.mapToReceipt(config, list));
-          }else if (printerCommand == PrinterCommand.TSC) {
-            deviceConnFactoryManager.sendDataImmediately(PrintContent.mapToLabel(config, list));
-          }else if (printerCommand == PrinterCommand.CPCL) {
-            deviceConnFactoryManager.sendDataImmediately(PrintContent.mapToCPCL(config, list));
-          }
+          job.send(deviceConnFactoryManager);
         }
-      });
+      }, PrinterJobQueue.parsePriority(call.argument("priority")), result)) {
+        job.cancel();
+      }
     }else{
       result.error("please add config or data", "", null);
     }
 
   }
 
-  
+  /**
+   * 批量打印：jobs 中每个任务为 {address?, config, data}，同一台打印机的任务一次提交、依次写出，
+   * 全部完成后一次返回每个任务的结果 {ok, error?}
+   */
+  @SuppressWarnings("unchecked")
+  private void printBatch(MethodCall call, final Result result) {
+    final List<Map<String,Object>> jobs = call.argument("jobs");
+    if (jobs == null) {
+      result.error("please add jobs", "", null);
+      return;
+    }
+    PrinterJobQueue.Priority priority = PrinterJobQueue.parsePriority(call.argument("priority"));
+    final Object[] results = new Object[jobs.size()];
+    final AtomicInteger remaining = new AtomicInteger(jobs.size() + 1);
+
+    // 按打印机分组，保持任务原有顺序
+    Map<String, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < jobs.size(); i++) {
+      Object address = jobs.get(i).get("address");
+      String key = address instanceof String ? (String) address : curMacAddress;
+      List<Integer> group = groups.get(key);
+      if (group == null) {
+        group = new ArrayList<>();
+        groups.put(key, group);
+      }
+      group.add(i);
+    }
+
+    for (Map.Entry<String, List<Integer>> entry : groups.entrySet()) {
+      final List<Integer> group = entry.getValue();
+      final DeviceConnFactoryManager deviceConnFactoryManager = entry.getKey() == null ? null
+              : DeviceConnFactoryManager.getDeviceConnFactoryManagers().get(entry.getKey());
+      String error = null;
+      if (deviceConnFactoryManager == null || !deviceConnFactoryManager.isAcceptingJobs()) {
+        error = "not connect";
+      } else {
+        // 提交时即开始并行编码，队列中依次写出
+        final PrintJob[] printJobs = new PrintJob[group.size()];
+        final String[] errors = new String[group.size()];
+        for (int i = 0; i < group.size(); i++) {
+          Map<String,Object> job = jobs.get(group.get(i));
+          try {
+            Map<String,Object> config = (Map<String,Object>) job.get("config");
+            LineReader lines = LineReader.of(job.get("data"));
+            if (config == null || lines == null) {
+              errors[i] = "please add config or data";
+            } else {
+              printJobs[i] = new PrintJob(deviceConnFactoryManager, config, lines);
+            }
+          } catch (IllegalArgumentException e) {
+            errors[i] = e.getMessage();
+          }
+        }
+        try {
+          deviceConnFactoryManager.getJobQueue().execute(new PrinterJobQueue.DroppableTask() {
+            @Override
+            public void run() {
+              for (int i = 0; i < group.size(); i++) {
+                int index = group.get(i);
+                String jobError = errors[i];
+                try {
+                  if (jobError == null && !printJobs[i].send(deviceConnFactoryManager)) {
+                    jobError = "write failed";
+                  }
+                } catch (Exception e) {
+                  Log.e(TAG, "******************* batch job " + index + " failed", e);
+                  jobError = e.getMessage() != null ? e.getMessage() : e.toString();
+                }
+                batchJobDone(results, index, jobError, remaining, result);
+              }
+            }
+
+            @Override
+            public void onDropped() {
+              // 重连失败或断开连接时丢弃，整组任务都未执行
+              for (int i = 0; i < group.size(); i++) {
+                if (printJobs[i] != null) {
+                  printJobs[i].cancel();
+                }
+                batchJobDone(results, group.get(i), errors[i] != null ? errors[i] : "cancelled", remaining, result);
+              }
+            }
+          }, priority);
+        } catch (RejectedExecutionException e) {
+          error = "queue_full";
+          for (PrintJob printJob : printJobs) {
+            if (printJob != null) {
+              printJob.cancel();
+            }
+          }
+        }
+      }
+      if (error != null) {
+        for (int index : group) {
+          batchJobDone(results, index, error, remaining, result);
+        }
+      }
+    }
+    // 分组提交完成
+    batchJobDone(null, -1, null, remaining, result);
+  }
+
+  private void batchJobDone(Object[] results, int index, String error, AtomicInteger remaining, final Result result) {
+    if (results != null) {
+      Map<String, Object> ret = new HashMap<>();
+      ret.put("ok", error == null);
+      if (error != null) {
+        ret.put("error", error);
+      }
+      results[index] = ret;
+    }
+    if (remaining.decrementAndGet() == 0) {
+      final List<Object> reply = Arrays.asList(results != null ? results : new Object[0]);
+      mainHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          result.success(reply);
+        }
+      });
+    }
+  }
+
+  /**
+   * 缓存统计：已编码任务缓存与图片光栅缓存
+   */
+  private void cacheStats(Result result) {
+    Map<String, Object> stats = EncodedJobCache.getInstance().getStats();
+    stats.put("raster", RasterCache.getInstance().getStats());
+    result.success(stats);
+  }
+
+  /**
+   * 打印机被重置或清空 NV/Flash 后调用，清除已下载图片的记录，之后的任务重新下载
+   */
+  private void resetAssets(MethodCall call, Result result) {
+    String address = call.argument("address");
+    if (address == null) {
+      address = curMacAddress;
+    }
+    if (address == null || context == null) {
+      result.error("not connect", "state not right", null);
+      return;
+    }
+    final PrinterCapabilityStore store = PrinterCapabilityStore.getInstance(context);
+    final String target = address;
+    runInBackground(new Runnable() {
+      @Override
+      public void run() {
+        store.removeAssets(target);
+      }
+    }, result);
+  }
+
+  /**
+   * 保存打印机的票据代码页，之后未指定 codepage 的任务使用该代码页；codePage 为空时删除记录
+   */
+  private void setCodePage(MethodCall call, Result result) {
+    String address = call.argument("address");
+    if (address == null) {
+      address = curMacAddress;
+    }
+    if (address == null || context == null) {
+      result.error("not connect", "state not right", null);
+      return;
+    }
+    Object name = call.argument("codePage");
+    CodePage codePage = CodePage.parse(name);
+    if (name != null && codePage == null) {
+      result.error("invalid_code_page", "unknown code page: " + name, null);
+      return;
+    }
+    final PrinterCapabilityStore store = PrinterCapabilityStore.getInstance(context);
+    final String target = address;
+    final CodePage page = codePage;
+    runInBackground(new Runnable() {
+      @Override
+      public void run() {
+        store.putCodePage(target, page);
+      }
+    }, result);
+  }
+
+  /**
+   * 在线程池中执行打印机记录的读写，不阻塞主线程，完成后在主线程返回 true
+   */
+  private void runInBackground(final Runnable task, final Result result) {
+    try {
+      ThreadPool.getInstantiation().execute(new Runnable() {
+        @Override
+        public void run() {
+          task.run();
+          mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+              result.success(true);
+            }
+          });
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      result.error("queue_full", e.getMessage(), null);
+    }
+  }
+
+  /**
+   * 注册打印模板，固定部分在首次打印时按打印机指令编码一次
+   */
+  @SuppressWarnings("unchecked")
+  private void registerTemplate(MethodCall call, Result result) {
+    Map<String, Object> args = call.arguments();
+    if (args == null || args.get("id") == null || !args.containsKey("data")) {
+      result.error("invalid_argument", "argument 'id' or 'data' not found", null);
+      return;
+    }
+
+    Map<String,Object> config = (Map<String,Object>)args.get("config");
+    List<Map<String,Object>> list = (List<Map<String,Object>>)args.get("data");
+    if (config == null) {
+      config = new HashMap<>();
+    }
+    if (list == null) {
+      list = new ArrayList<>();
+    }
+    templates.put((String) args.get("id"), new PrintTemplate(config, list));
+    result.success(true);
+  }
+
+  /**
+   * 按模板打印，只编码变量位内容
+   */
+  @SuppressWarnings("unchecked")
+  private void printTemplate(MethodCall call, Result result) {
+    Map<String, Object> args = call.arguments();
+    final PrintTemplate template = args == null ? null : templates.get((String) args.get("id"));
+    if (template == null) {
+      result.error("template_not_found", "template is not registered", null);
+      return;
+    }
+
+    final DeviceConnFactoryManager deviceConnFactoryManager = getDeviceConnFactoryManager(call);
+    if (deviceConnFactoryManager == null || !deviceConnFactoryManager.isAcceptingJobs()) {
+      result.error("not connect", "state not right", null);
+      return;
+    }
+
+    final Map<String, List<Map<String,Object>>> slots = (Map<String, List<Map<String,Object>>>)args.get("slots");
+    if (submit(deviceConnFactoryManager, new Runnable() {
+      @Override
+      public void run() {
+        PrinterCommand printerCommand = deviceConnFactoryManager.getCurrentPrinterCommand();
+        if (printerCommand != null) {
+          deviceConnFactoryManager.sendDataFlowControlled(template.render(printerCommand, slots));
+        }
+      }
+    }, PrinterJobQueue.parsePriority(call.argument("priority")), result)) {
+      result.success(true);
+    }
+  }
 
   @Override
   public boolean onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
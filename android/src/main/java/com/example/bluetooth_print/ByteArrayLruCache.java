@@ -0,0 +1,113 @@
+package com.example.bluetooth_print;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按字节预算做 LRU 淘汰的 byte[] 缓存，带命中、未命中、淘汰计数
+ */
+public class ByteArrayLruCache {
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long maxBytes;
+
+    private long currentBytes;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    protected ByteArrayLruCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 查找缓存，未命中返回 null
+     */
+    public synchronized byte[] get(String key) {
+        byte[] value = entries.get(key);
+        if (value != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return value;
+    }
+
+    /**
+     * 写入缓存，超过预算时淘汰最久未使用的条目；单条超过预算的数据不缓存
+     */
+    public synchronized void put(String key, byte[] value) {
+        if (value.length > maxBytes) {
+            return;
+        }
+        byte[] previous = entries.put(key, value);
+        if (previous != null) {
+            currentBytes -= previous.length;
+        }
+        currentBytes += value.length;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * 调整字节预算
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    private void trimToSize(long size) {
+        Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+        while (currentBytes > size && iterator.hasNext()) {
+            currentBytes -= iterator.next().getValue().length;
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * 缓存统计，用于评估缓存大小
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictionCount);
+        stats.put("entries", entries.size());
+        stats.put("bytes", currentBytes);
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    /**
+     * 内容键使用的 SHA-256 摘要
+     */
+    protected static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected static String toHex(byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = Character.forDigit((hash[i] >> 4) & 0x0F, 16);
+            hex[i * 2 + 1] = Character.forDigit(hash[i] & 0x0F, 16);
+        }
+        return new String(hex);
+    }
+}
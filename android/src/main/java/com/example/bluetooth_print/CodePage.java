@@ -0,0 +1,152 @@
+package com.example.bluetooth_print;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.text.Normalizer;
+
+/**
+ * 票据文本代码页
+ * 单字节代码页用预先生成的对照表逐字符查表，直接写入指令缓冲区；代码页中没有的字符先去掉重音（ã → a），仍没有时为 ?
+ * GBK 沿用原来的 GB18030 编码（双字节部分与 GBK 相同），依赖打印机的汉字模式
+ */
+public enum CodePage {
+    GBK(-1, null),
+    CP437(0,
+            "\u00C7\u00FC\u00E9\u00E2\u00E4\u00E0\u00E5\u00E7\u00EA\u00EB\u00E8\u00EF\u00EE\u00EC\u00C4\u00C5"
+            + "\u00C9\u00E6\u00C6\u00F4\u00F6\u00F2\u00FB\u00F9\u00FF\u00D6\u00DC\u00A2\u00A3\u00A5\u20A7\u0192"
+            + "\u00E1\u00ED\u00F3\u00FA\u00F1\u00D1\u00AA\u00BA\u00BF\u2310\u00AC\u00BD\u00BC\u00A1\u00AB\u00BB"
+            + "\u2591\u2592\u2593\u2502\u2524\u2561\u2562\u2556\u2555\u2563\u2551\u2557\u255D\u255C\u255B\u2510"
+            + "\u2514\u2534\u252C\u251C\u2500\u253C\u255E\u255F\u255A\u2554\u2569\u2566\u2560\u2550\u256C\u2567"
+            + "\u2568\u2564\u2565\u2559\u2558\u2552\u2553\u256B\u256A\u2518\u250C\u2588\u2584\u258C\u2590\u2580"
+            + "\u03B1\u00DF\u0393\u03C0\u03A3\u03C3\u00B5\u03C4\u03A6\u0398\u03A9\u03B4\u221E\u03C6\u03B5\u2229"
+            + "\u2261\u00B1\u2265\u2264\u2320\u2321\u00F7\u2248\u00B0\u2219\u00B7\u221A\u207F\u00B2\u25A0\u00A0"),
+    CP850(2,
+            "\u00C7\u00FC\u00E9\u00E2\u00E4\u00E0\u00E5\u00E7\u00EA\u00EB\u00E8\u00EF\u00EE\u00EC\u00C4\u00C5"
+            + "\u00C9\u00E6\u00C6\u00F4\u00F6\u00F2\u00FB\u00F9\u00FF\u00D6\u00DC\u00F8\u00A3\u00D8\u00D7\u0192"
+            + "\u00E1\u00ED\u00F3\u00FA\u00F1\u00D1\u00AA\u00BA\u00BF\u00AE\u00AC\u00BD\u00BC\u00A1\u00AB\u00BB"
+            + "\u2591\u2592\u2593\u2502\u2524\u00C1\u00C2\u00C0\u00A9\u2563\u2551\u2557\u255D\u00A2\u00A5\u2510"
+            + "\u2514\u2534\u252C\u251C\u2500\u253C\u00E3\u00C3\u255A\u2554\u2569\u2566\u2560\u2550\u256C\u00A4"
+            + "\u00F0\u00D0\u00CA\u00CB\u00C8\u0131\u00CD\u00CE\u00CF\u2518\u250C\u2588\u2584\u00A6\u00CC\u2580"
+            + "\u00D3\u00DF\u00D4\u00D2\u00F5\u00D5\u00B5\u00FE\u00DE\u00DA\u00DB\u00D9\u00FD\u00DD\u00AF\u00B4"
+            + "\u00AD\u00B1\u2017\u00BE\u00B6\u00A7\u00F7\u00B8\u00B0\u00A8\u00B7\u00B9\u00B3\u00B2\u25A0\u00A0"),
+    CP860(3,
+            "\u00C7\u00FC\u00E9\u00E2\u00E3\u00E0\u00C1\u00E7\u00EA\u00CA\u00E8\u00CD\u00D4\u00EC\u00C3\u00C2"
+            + "\u00C9\u00C0\u00C8\u00F4\u00F5\u00F2\u00DA\u00F9\u00CC\u00D5\u00DC\u00A2\u00A3\u00D9\u20A7\u00D3"
+            + "\u00E1\u00ED\u00F3\u00FA\u00F1\u00D1\u00AA\u00BA\u00BF\u00D2\u00AC\u00BD\u00BC\u00A1\u00AB\u00BB"
+            + "\u2591\u2592\u2593\u2502\u2524\u2561\u2562\u2556\u2555\u2563\u2551\u2557\u255D\u255C\u255B\u2510"
+            + "\u2514\u2534\u252C\u251C\u2500\u253C\u255E\u255F\u255A\u2554\u2569\u2566\u2560\u2550\u256C\u2567"
+            + "\u2568\u2564\u2565\u2559\u2558\u2552\u2553\u256B\u256A\u2518\u250C\u2588\u2584\u258C\u2590\u2580"
+            + "\u03B1\u00DF\u0393\u03C0\u03A3\u03C3\u00B5\u03C4\u03A6\u0398\u03A9\u03B4\u221E\u03C6\u03B5\u2229"
+            + "\u2261\u00B1\u2265\u2264\u2320\u2321\u00F7\u2248\u00B0\u2219\u00B7\u221A\u207F\u00B2\u25A0\u00A0"),
+    CP1252(16,
+            "\u20AC\u0000\u201A\u0192\u201E\u2026\u2020\u2021\u02C6\u2030\u0160\u2039\u0152\u0000\u017D\u0000"
+            + "\u0000\u2018\u2019\u201C\u201D\u2022\u2013\u2014\u02DC\u2122\u0161\u203A\u0153\u0000\u017E\u0178"
+            + "\u00A0\u00A1\u00A2\u00A3\u00A4\u00A5\u00A6\u00A7\u00A8\u00A9\u00AA\u00AB\u00AC\u00AD\u00AE\u00AF"
+            + "\u00B0\u00B1\u00B2\u00B3\u00B4\u00B5\u00B6\u00B7\u00B8\u00B9\u00BA\u00BB\u00BC\u00BD\u00BE\u00BF"
+            + "\u00C0\u00C1\u00C2\u00C3\u00C4\u00C5\u00C6\u00C7\u00C8\u00C9\u00CA\u00CB\u00CC\u00CD\u00CE\u00CF"
+            + "\u00D0\u00D1\u00D2\u00D3\u00D4\u00D5\u00D6\u00D7\u00D8\u00D9\u00DA\u00DB\u00DC\u00DD\u00DE\u00DF"
+            + "\u00E0\u00E1\u00E2\u00E3\u00E4\u00E5\u00E6\u00E7\u00E8\u00E9\u00EA\u00EB\u00EC\u00ED\u00EE\u00EF"
+            + "\u00F0\u00F1\u00F2\u00F3\u00F4\u00F5\u00F6\u00F7\u00F8\u00F9\u00FA\u00FB\u00FC\u00FD\u00FE\u00FF");
+
+    /**
+     * 对照表覆盖的字符范围，上述代码页中的字符都在 U+2600 以下
+     */
+    private static final int TABLE_SIZE = 0x2600;
+
+    private static final Charset GB18030 = Charset.forName("GB18030");
+
+    /**
+     * ESC t n 中的 n，GBK 为 -1
+     */
+    public final int escCode;
+
+    /**
+     * 0x80~0xFF 对应的字符，没有定义的位置为 \u0000
+     */
+    private final String upper;
+
+    private byte[] table;
+
+    CodePage(int escCode, String upper) {
+        this.escCode = escCode;
+        this.upper = upper;
+    }
+
+    public boolean isSingleByte() {
+        return upper != null;
+    }
+
+    /**
+     * 按名称解析代码页（gbk、cp437、cp850、cp860、cp1252），无法识别时返回 null
+     */
+    public static CodePage parse(Object name) {
+        if (name instanceof String) {
+            for (CodePage codePage : values()) {
+                if (codePage.name().equalsIgnoreCase((String) name)) {
+                    return codePage;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 字符到字节的对照表，首次使用时生成；0 表示代码页中没有该字符
+     */
+    private synchronized byte[] table() {
+        if (table == null) {
+            byte[] t = new byte[TABLE_SIZE];
+            for (int i = 0; i < 128; i++) {
+                char c = upper.charAt(i);
+                if (c != 0) {
+                    t[c] = (byte) (0x80 + i);
+                }
+            }
+            for (char c = 0x80; c < TABLE_SIZE; c++) {
+                if (t[c] == 0) {
+                    char base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+                    if (base < 0x80) {
+                        t[c] = (byte) base;
+                    } else if (base < TABLE_SIZE && base != c) {
+                        t[c] = t[base];
+                    }
+                }
+            }
+            table = t;
+        }
+        return table;
+    }
+
+    /**
+     * 编码后的最大字节数
+     */
+    int maxLength(int chars) {
+        return isSingleByte() ? chars : chars * 4;
+    }
+
+    /**
+     * 把 text 编码写入 out 的 offset 处，返回写入的字节数；out 须有 {@link #maxLength} 个字节的空间
+     */
+    int encode(String text, byte[] out, int offset) {
+        int length = text.length();
+        if (!isSingleByte()) {
+            CharsetEncoder encoder = GB18030.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer target = ByteBuffer.wrap(out, offset, out.length - offset);
+            encoder.encode(CharBuffer.wrap(text), target, true);
+            encoder.flush(target);
+            return target.position() - offset;
+        }
+        byte[] t = table();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            byte b = c < 0x80 ? (byte) c : c < TABLE_SIZE ? t[c] : 0;
+            out[offset + i] = b != 0 || c == 0 ? b : (byte) '?';
+        }
+        return length;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.bluetooth_print;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 打印指令字节缓冲区
+ * 以原始 byte[] 按需扩容，替代 SDK 中逐字节装箱、逐次加锁的 Vector&lt;Byte&gt;
+ */
+public class CommandBuffer {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    protected byte[] buffer;
+
+    protected int count;
+
+    /**
+     * 分段写出目标，为空时指令全部保留在缓冲区中
+     */
+    private Output output;
+
+    /**
+     * 指令分段写出目标
+     */
+    public interface Output {
+        void write(byte[] data, int offset, int length);
+    }
+
+    public CommandBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CommandBuffer(int capacity) {
+        buffer = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * 确保还能写入 length 个字节
+     */
+    protected void ensureCapacity(int length) {
+        int required = count + length;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, required));
+        }
+    }
+
+    public void add(int b) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    public void add(int b0, int b1) {
+        ensureCapacity(2);
+        buffer[count++] = (byte) b0;
+        buffer[count++] = (byte) b1;
+    }
+
+    public void add(int b0, int b1, int b2) {
+        ensureCapacity(3);
+        buffer[count++] = (byte) b0;
+        buffer[count++] = (byte) b1;
+        buffer[count++] = (byte) b2;
+    }
+
+    /**
+     * 写入小端 16 位数值（nL nH）
+     */
+    public void addShortLE(int value) {
+        add(value & 0xFF, (value >> 8) & 0xFF);
+    }
+
+    public void addArray(byte[] data) {
+        addArray(data, 0, data.length);
+    }
+
+    public void addArray(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, buffer, count, length);
+        count += length;
+    }
+
+    /**
+     * 写入点阵中 top 行起 rows 行、字节列 [left, right) 的部分，invert 为 true 时按位取反（TSC 位图 1 为白点）
+     */
+    public void addRows(byte[] bits, int widthBytes, int left, int right, int top, int rows, boolean invert) {
+        int length = right - left;
+        ensureCapacity(length * rows);
+        for (int row = top, end = top + rows; row < end; row++) {
+            int offset = row * widthBytes + left;
+            if (invert) {
+                for (int i = 0; i < length; i++) {
+                    buffer[count++] = (byte) ~bits[offset + i];
+                }
+            } else {
+                System.arraycopy(bits, offset, buffer, count, length);
+                count += length;
+            }
+        }
+    }
+
+    /**
+     * 写入 ASCII 字符串，不产生中间 byte[]
+     */
+    public void addAscii(String str) {
+        int length = str.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buffer[count++] = (byte) str.charAt(i);
+        }
+    }
+
+    /**
+     * 以十进制 ASCII 写入整数，不产生中间 String
+     */
+    public void addNumber(int value) {
+        if (value < 0) {
+            add('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+    }
+
+    /**
+     * 按指定字符集写入字符串
+     */
+    public void addString(String str, Charset charset) {
+        if (str == null || str.isEmpty()) {
+            return;
+        }
+        addArray(str.getBytes(charset));
+    }
+
+    /**
+     * 添加用户自定义指令
+     */
+    public void addUserCommand(byte[] command) {
+        if (command != null) {
+            addArray(command);
+        }
+    }
+
+    /**
+     * 已写入的字节数
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 获取紧凑的指令字节数组
+     */
+    public byte[] getCommand() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    public void setOutput(Output output) {
+        this.output = output;
+    }
+
+    /**
+     * 将已写入的指令交给写出目标并清空缓冲区；未设置写出目标时不做处理
+     */
+    public void flush() {
+        if (output != null && count > 0) {
+            output.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    public void clear() {
+        count = 0;
+    }
+}
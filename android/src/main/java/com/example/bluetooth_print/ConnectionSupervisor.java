@@ -0,0 +1,266 @@
+package com.example.bluetooth_print;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 连接守护
+ * 连接空闲时定时发送状态查询（ESC 为 DLE EOT）作为心跳，连续未应答或读写异常时视为断开；
+ * 断开后暂停任务队列（排队中的任务保留），按指数退避加随机抖动重新打开端口，识别出指令集后恢复队列
+ */
+public class ConnectionSupervisor {
+    private static final String TAG = ConnectionSupervisor.class.getSimpleName();
+
+    /**
+     * 心跳间隔，期间有过应答或写出时不发送
+     */
+    private static final long KEEPALIVE_INTERVAL_MS = 5000;
+
+    /**
+     * 心跳应答超时
+     */
+    private static final long KEEPALIVE_TIMEOUT_MS = 2000;
+
+    /**
+     * 连续未应答多少次视为断开
+     */
+    private static final int KEEPALIVE_MAX_MISSED = 2;
+
+    private static final long BACKOFF_BASE_MS = 500;
+
+    private static final long BACKOFF_MAX_MS = 30000;
+
+    /**
+     * 重连次数上限，超过后放弃并丢弃排队中的任务
+     */
+    private static final int MAX_ATTEMPTS = 12;
+
+    private final DeviceConnFactoryManager device;
+
+    private boolean enabled;
+
+    private boolean reconnecting;
+
+    private int attempt;
+
+    private int missed;
+
+    private long downSince;
+
+    private ScheduledFuture<?> pending;
+
+    private long reconnects;
+
+    private long failedAttempts;
+
+    private long totalDowntimeMs;
+
+    private long lastDowntimeMs;
+
+    private long keepalivesSent;
+
+    private long keepalivesMissed;
+
+    public ConnectionSupervisor(DeviceConnFactoryManager device) {
+        this.device = device;
+    }
+
+    /**
+     * 开启或关闭自动重连；主动断开连接前应关闭
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            cancelPending();
+            if (reconnecting) {
+                reconnecting = false;
+                device.getJobQueue().setPaused(false);
+            }
+        }
+    }
+
+    public synchronized boolean isReconnecting() {
+        return reconnecting;
+    }
+
+    /**
+     * 已识别出指令集，连接可用
+     */
+    public synchronized void onLinkUp() {
+        if (reconnecting) {
+            reconnecting = false;
+            reconnects++;
+            lastDowntimeMs = System.currentTimeMillis() - downSince;
+            totalDowntimeMs += lastDowntimeMs;
+            Log.i(TAG, "******************* reconnected " + device.getMacAddress() + " after " + lastDowntimeMs + " ms");
+            device.getJobQueue().setPaused(false);
+        }
+        attempt = 0;
+        missed = 0;
+        if (enabled) {
+            scheduleKeepalive();
+        }
+    }
+
+    /**
+     * 读写异常或心跳超时，连接已不可用
+     */
+    public synchronized void onLinkLost() {
+        if (!enabled || reconnecting) {
+            return;
+        }
+        Log.w(TAG, "******************* link lost " + device.getMacAddress());
+        reconnecting = true;
+        downSince = System.currentTimeMillis();
+        device.getJobQueue().setPaused(true);
+        cancelPending();
+        scheduleAttempt();
+    }
+
+    /**
+     * 重连时端口打开失败或未识别出指令集
+     */
+    public synchronized void onConnectFailed() {
+        if (!enabled || !reconnecting) {
+            return;
+        }
+        failedAttempts++;
+        if (attempt >= MAX_ATTEMPTS) {
+            Log.w(TAG, "******************* give up reconnecting " + device.getMacAddress());
+            reconnecting = false;
+            enabled = false;
+            device.getJobQueue().clear();
+            device.getJobQueue().setPaused(false);
+            return;
+        }
+        scheduleAttempt();
+    }
+
+    private void scheduleAttempt() {
+        long delay = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(attempt, 16));
+        // 一半固定、一半随机，避免多台打印机同时重连
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        attempt++;
+        pending = ThreadPool.getInstantiation().schedule(new Runnable() {
+            @Override
+            public void run() {
+                reopen();
+            }
+        }, delay);
+    }
+
+    /**
+     * 打开端口会阻塞，放到线程池执行，不占用共享定时器；提交或打开失败都按本次重连失败处理，继续退避重试
+     */
+    private void reopen() {
+        synchronized (this) {
+            if (!enabled || !reconnecting) {
+                return;
+            }
+        }
+        try {
+            ThreadPool.getInstantiation().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        device.closePort();
+                        device.openPort();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "******************* reopen failed " + device.getMacAddress(), e);
+                        onConnectFailed();
+                        return;
+                    }
+                    if (!device.getConnState()) {
+                        onConnectFailed();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "******************* reopen deferred: " + e.getMessage());
+            onConnectFailed();
+        }
+    }
+
+    private void scheduleKeepalive() {
+        cancelPending();
+        pending = ThreadPool.getInstantiation().schedule(new Runnable() {
+            @Override
+            public void run() {
+                keepalive();
+            }
+        }, KEEPALIVE_INTERVAL_MS);
+    }
+
+    private synchronized void keepalive() {
+        if (!enabled || reconnecting) {
+            return;
+        }
+        final long sentAt = System.currentTimeMillis();
+        if (sentAt - device.getLastActivity() < KEEPALIVE_INTERVAL_MS) {
+            missed = 0;
+            scheduleKeepalive();
+            return;
+        }
+        keepalivesSent++;
+        try {
+            device.sendKeepalive();
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "******************* keepalive not queued: " + e.getMessage());
+            scheduleKeepalive();
+            return;
+        }
+        pending = ThreadPool.getInstantiation().schedule(new Runnable() {
+            @Override
+            public void run() {
+                checkKeepalive(sentAt);
+            }
+        }, KEEPALIVE_TIMEOUT_MS);
+    }
+
+    private void checkKeepalive(long sentAt) {
+        synchronized (this) {
+            if (!enabled || reconnecting) {
+                return;
+            }
+            if (device.getLastReplyAt() >= sentAt) {
+                missed = 0;
+                scheduleKeepalive();
+                return;
+            }
+            keepalivesMissed++;
+            if (++missed < KEEPALIVE_MAX_MISSED) {
+                scheduleKeepalive();
+                return;
+            }
+        }
+        device.onKeepaliveTimeout();
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    /**
+     * 重连与心跳统计
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> ret = new HashMap<>();
+        ret.put("autoReconnect", enabled);
+        ret.put("reconnecting", reconnecting);
+        ret.put("reconnects", reconnects);
+        ret.put("failedAttempts", failedAttempts);
+        ret.put("totalDowntimeMs", totalDowntimeMs + (reconnecting ? System.currentTimeMillis() - downSince : 0));
+        ret.put("lastDowntimeMs", lastDowntimeMs);
+        ret.put("keepalivesSent", keepalivesSent);
+        ret.put("keepalivesMissed", keepalivesMissed);
+        return ret;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.bluetooth_print;
+
+import java.nio.charset.Charset;
+
+/**
+ * CPCL 面单指令构建，直接写入原始字节缓冲区
+ */
+public class CpclCommandBuffer extends CommandBuffer {
+    private static final Charset CHARSET = Charset.forName("GB18030");
+
+    private static final String CRLF = "\r\n";
+
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    public CpclCommandBuffer() {
+        super();
+    }
+
+    public CpclCommandBuffer(int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * 页面开始 ! offset 200 200 height qty
+     */
+    public void addInitializePrinter(int height, int qty) {
+        addAscii("! 0 200 200 ");
+        addNumber(height);
+        add(' ');
+        addNumber(qty);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 文本 TEXT font size x y content
+     */
+    public void addText(int font, int size, int x, int y, String content) {
+        addAscii("TEXT ");
+        addNumber(font);
+        add(' ');
+        addNumber(size);
+        add(' ');
+        addNumber(x);
+        add(' ');
+        addNumber(y);
+        add(' ');
+        addString(content, CHARSET);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 页面宽度 PAGE-WIDTH width
+     */
+    public void addPageWidth(int width) {
+        addAscii("PAGE-WIDTH ");
+        addNumber(width);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 后续字段的对齐方式 LEFT | CENTER | RIGHT，相对于页面宽度
+     */
+    public void addJustification(int align) {
+        addAscii(align == 1 ? "CENTER" : align == 2 ? "RIGHT" : "LEFT");
+        addAscii(CRLF);
+    }
+
+    /**
+     * 加粗 SETBOLD n，0 为取消
+     */
+    public void addSetBold(int bold) {
+        addAscii("SETBOLD ");
+        addNumber(bold);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 字体放大 SETMAG w h，0 0 为取消
+     */
+    public void addSetMag(int width, int height) {
+        addAscii("SETMAG ");
+        addNumber(width);
+        add(' ');
+        addNumber(height);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 下划线 UNDERLINE ON | OFF
+     */
+    public void addUnderline(boolean on) {
+        addAscii(on ? "UNDERLINE ON" : "UNDERLINE OFF");
+        addAscii(CRLF);
+    }
+
+    /**
+     * 条码下方可读字符 BARCODE-TEXT font size offset
+     */
+    public void addBarcodeText(int font, int size, int offset) {
+        addAscii("BARCODE-TEXT ");
+        addNumber(font);
+        add(' ');
+        addNumber(size);
+        add(' ');
+        addNumber(offset);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 取消条码可读字符 BARCODE-TEXT OFF
+     */
+    public void addBarcodeTextOff() {
+        addAscii("BARCODE-TEXT OFF" + CRLF);
+    }
+
+    /**
+     * CODE128 条码 BARCODE 128 width ratio height x y content
+     */
+    public void addBarcode128(int width, int ratio, int height, int x, int y, String content) {
+        addAscii("BARCODE 128 ");
+        addNumber(width);
+        add(' ');
+        addNumber(ratio);
+        add(' ');
+        addNumber(height);
+        add(' ');
+        addNumber(x);
+        add(' ');
+        addNumber(y);
+        add(' ');
+        addString(content, CHARSET);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 二维码 BARCODE QR x y M 2 U unit，数据行 MA,content，纠错等级 M、自动识别数据类型
+     */
+    public void addQRCode(int x, int y, int unit, String content) {
+        addAscii("BARCODE QR ");
+        addNumber(x);
+        add(' ');
+        addNumber(y);
+        addAscii(" M 2 U ");
+        addNumber(unit);
+        addAscii(CRLF);
+        addAscii("MA,");
+        addString(content, CHARSET);
+        addAscii(CRLF);
+        addAscii("ENDQR" + CRLF);
+    }
+
+    /**
+     * 位图：compressed 为 true 时 CG widthBytes height x y 二进制数据，否则 EG 十六进制文本
+     * bits 为按行排列、每字节 8 点、高位在左、1 为黑点的点阵，与 ESC 光栅位图格式相同
+     * CG 的数据量是 EG 的一半，蓝牙链路上优先使用；个别固件或透传链路不能处理二进制时改用 EG
+     * 写出点阵中 top 行起 rows 行、字节列 [left, right) 的部分
+     */
+    public void addGraphics(boolean compressed, int x, int y, byte[] bits, int widthBytes, int left, int right, int top, int rows) {
+        addAscii(compressed ? "CG " : "EG ");
+        addNumber(right - left);
+        add(' ');
+        addNumber(rows);
+        add(' ');
+        addNumber(x);
+        add(' ');
+        addNumber(y);
+        add(' ');
+        if (compressed) {
+            addRows(bits, widthBytes, left, right, top, rows, false);
+        } else {
+            ensureCapacity((right - left) * rows * 2);
+            for (int row = top, end = top + rows; row < end; row++) {
+                for (int i = row * widthBytes + left, rowEnd = row * widthBytes + right; i < rowEnd; i++) {
+                    buffer[count++] = HEX[(bits[i] >> 4) & 0x0F];
+                    buffer[count++] = HEX[bits[i] & 0x0F];
+                }
+            }
+        }
+        addAscii(CRLF);
+    }
+
+    /**
+     * 走纸到下一张标签开头 FORM
+     */
+    public void addForm() {
+        addAscii("FORM" + CRLF);
+    }
+
+    /**
+     * 打印 PRINT
+     */
+    public void addPrint() {
+        addAscii("PRINT" + CRLF);
+    }
+}
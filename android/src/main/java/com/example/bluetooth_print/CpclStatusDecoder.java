@@ -0,0 +1,40 @@
+package com.example.bluetooth_print;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CPCL 应答解码
+ * ESC h 的应答为 1 字节状态，按已发送且未应答的查询数解码；其它数据视为查询应答以外的回传，每次解码只通知一次
+ */
+public class CpclStatusDecoder extends StatusDecoder {
+    private static final int PAPER_OUT = 0x01;
+    private static final int COVER_OPEN = 0x02;
+
+    /**
+     * 待应答的 ESC h 查询数；查询在发送线程计数，应答在读线程解码
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    @Override
+    public void decode(ResponseRingBuffer in, Sink sink) {
+        while (in.available() > 0 && takePending(pending)) {
+            int b = in.read();
+            sink.onRealtimeStatus(((b & PAPER_OUT) != 0 ? PrinterStatusListener.STATUS_PAPER_OUT : 0)
+                    | ((b & COVER_OPEN) != 0 ? PrinterStatusListener.STATUS_COVER_OPEN : 0));
+        }
+        if (in.available() > 0) {
+            in.clear();
+            sink.onBufferStatus();
+        }
+    }
+
+    @Override
+    public void expectStatus() {
+        pending.incrementAndGet();
+    }
+
+    @Override
+    public void reset() {
+        pending.set(0);
+    }
+}
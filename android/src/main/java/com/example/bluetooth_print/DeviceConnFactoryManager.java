@@ -3,25 +3,27 @@ package com.example.bluetooth_print;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
 import com.gprinter.io.*;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Vector;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * @author thon
  */
-public class DeviceConnFactoryManager {
+public class DeviceConnFactoryManager implements CommandBuffer.Output {
     private static final String TAG = DeviceConnFactoryManager.class.getSimpleName();
 
     public PortManager mPort;
@@ -32,7 +34,12 @@ public class DeviceConnFactoryManager {
 
     private final Context mContext;
 
-    private static Map<String, DeviceConnFactoryManager> deviceConnFactoryManagers = new HashMap<>();
+    private static final Map<String, DeviceConnFactoryManager> deviceConnFactoryManagers = new ConcurrentHashMap<>();
+
+    /**
+     * 本打印机的串行任务队列
+     */
+    private final PrinterJobQueue jobQueue = new PrinterJobQueue();
 
     private boolean isOpenPort;
     /**
@@ -41,73 +48,123 @@ public class DeviceConnFactoryManager {
     private final byte[] esc = {0x10, 0x04, 0x02};
 
     /**
-     * ESC查询打印机实时状态 缺纸状态
+     * TSC查询打印机状态指令
      */
-    private static final int ESC_STATE_PAPER_ERR = 0x20;
+    private final byte[] tsc = {0x1b, '!', '?'};
+
+    private final byte[] cpcl={0x1b,0x68};
+
+    private volatile byte[] sendCommand;
 
     /**
-     * ESC指令查询打印机实时状态 打印机开盖状态
+     * 直接缓冲区写出时复用的中转数组
      */
-    private static final int ESC_STATE_COVER_OPEN = 0x04;
+    private final byte[] transferBuffer = new byte[4096];
 
     /**
-     * ESC指令查询打印机实时状态 打印机报错状态
+     * 打印任务流控写出
      */
-    private static final int ESC_STATE_ERR_OCCURS = 0x40;
+    private final FlowControlWriter flowControlWriter = new FlowControlWriter(this);
 
     /**
-     * TSC查询打印机状态指令
+     * 判断打印机所使用指令是否是ESC指令
      */
-    private final byte[] tsc = {0x1b, '!', '?'};
+    private volatile PrinterCommand currentPrinterCommand;
+    public static final byte FLAG = 0x10;
+    private static final int DEFAUIT_COMMAND=20000;
+    public static final String ACTION_CONN_STATE = "action_connect_state";
+    public static final String ACTION_QUERY_PRINTER_STATE = "action_query_printer_state";
+    public static final String STATE = "state";
+    public static final String DEVICE_ID = "id";
+    public static final int CONN_STATE_DISCONNECT = 0x90;
+    public static final int CONN_STATE_CONNECTED = CONN_STATE_DISCONNECT << 3;
+    public PrinterReader reader;
 
     /**
-     * TSC指令查询打印机实时状态 打印机缺纸状态
+     * 读线程写入、应答解析消费的缓冲区
      */
-    private static final int TSC_STATE_PAPER_ERR = 0x04;
+    private final ResponseRingBuffer responses = new ResponseRingBuffer(1024);
+
+    private volatile PrinterStatusListener statusListener;
 
     /**
-     * TSC指令查询打印机实时状态 打印机开盖状态
+     * 当前指令集的应答解码器，查询指令集时随查询指令切换
      */
-    private static final int TSC_STATE_COVER_OPEN = 0x01;
+    private volatile StatusDecoder statusDecoder;
 
     /**
-     * TSC指令查询打印机实时状态 打印机出错状态
+     * 正在查询的指令集
      */
-    private static final int TSC_STATE_ERR_OCCURS = 0x80;
+    private volatile PrinterCommand probingCommand;
 
-    private final byte[] cpcl={0x1b,0x68};
+    /**
+     * 按地址保存的打印机能力，未设置 Context 时为空
+     */
+    private final PrinterCapabilityStore capabilityStore;
 
     /**
-     * CPCL指令查询打印机实时状态 打印机缺纸状态
+     * 指令集探测顺序：先发票据，面单，标签
      */
-    private static final int CPCL_STATE_PAPER_ERR = 0x01;
+    private static final PrinterCommand[] PROBE_ORDER = {PrinterCommand.ESC, PrinterCommand.CPCL, PrinterCommand.TSC};
+
+    /**
+     * 探测应答超时的上下限，实际超时按平滑后的应答时间自适应
+     */
+    private static final long PROBE_TIMEOUT_MIN_MS = 250;
+    private static final long PROBE_TIMEOUT_MAX_MS = 1500;
+
     /**
-     * CPCL指令查询打印机实时状态 打印机开盖状态
+     * 所有打印机共用的平滑应答时间
      */
-    private static final int CPCL_STATE_COVER_OPEN = 0x02;
+    private static volatile long smoothedRttMs = 100;
 
-    private byte[] sendCommand;
+    private final Object probeLock = new Object();
 
     /**
-     * 判断打印机所使用指令是否是ESC指令
+     * 正在等待探测应答
      */
-    private PrinterCommand currentPrinterCommand;
-    public static final byte FLAG = 0x10;
-    private static final int READ_DATA = 10000;
-    private static final int DEFAUIT_COMMAND=20000;
-    private static final String READ_DATA_CNT = "read_data_cnt";
-    private static final String READ_BUFFER_ARRAY = "read_buffer_array";
-    public static final String ACTION_CONN_STATE = "action_connect_state";
-    public static final String ACTION_QUERY_PRINTER_STATE = "action_query_printer_state";
-    public static final String STATE = "state";
-    public static final String DEVICE_ID = "id";
-    public static final int CONN_STATE_DISCONNECT = 0x90;
-    public static final int CONN_STATE_CONNECTED = CONN_STATE_DISCONNECT << 3;
-    public PrinterReader reader;
-    private int queryPrinterCommandFlag;
-    private final int ESC = 1;
-    private final int TSC = 3;
-    private final int CPCL = 2;
+    private boolean probing;
+
+    /**
+     * 当前探测在 PROBE_ORDER 中的位置，-1 为确认保存的指令集
+     */
+    private int probeIndex;
+
+    /**
+     * 每发送一次探测加一，用于忽略过期的超时任务
+     */
+    private int probeGeneration;
+
+    private ScheduledFuture<?> probeTimeout;
+
+    private long probeStartedAt;
+
+    private long probeSentAt;
+
+    /**
+     * 最近一次识别指令集的耗时，未识别时为 -1
+     */
+    private volatile long detectionMs = -1;
+
+    /**
+     * 最近一次识别的指令集是否来自保存的记录
+     */
+    private volatile boolean detectedFromCache;
+
+    /**
+     * 连接守护：心跳与断线重连
+     */
+    private final ConnectionSupervisor supervisor = new ConnectionSupervisor(this);
+
+    /**
+     * 最近一次收到应答的时间
+     */
+    private volatile long lastReplyAt;
+
+    /**
+     * 最近一次写出成功的时间
+     */
+    private volatile long lastWriteAt;
 
     public enum CONN_METHOD {
         //蓝牙连接
@@ -136,18 +193,23 @@ public class DeviceConnFactoryManager {
     }
 
     /**
-     * 打开端口
+     * 打开端口；同一地址已重新连接（本对象已被替换）时不再打开，避免旧连接的重连抢占新连接的端口
      */
     public void openPort() {
-        DeviceConnFactoryManager deviceConnFactoryManager = deviceConnFactoryManagers.get(macAddress);
-        if(deviceConnFactoryManager == null){
+        if (deviceConnFactoryManagers.get(macAddress) != this) {
             return;
         }
 
-        deviceConnFactoryManager.isOpenPort = false;
-        if (deviceConnFactoryManager.connMethod == CONN_METHOD.BLUETOOTH) {
+        isOpenPort = false;
+        flowControlWriter.reset(capabilityStore == null || capabilityStore.isBarrierSupported(macAddress));
+        if (connMethod == CONN_METHOD.BLUETOOTH) {
             mPort = new BluetoothPort(macAddress);
-            isOpenPort = deviceConnFactoryManager.mPort.openPort();
+            isOpenPort = mPort.openPort();
+        }
+        if (isOpenPort && deviceConnFactoryManagers.get(macAddress) != this) {
+            // 打开期间被替换
+            closePort();
+            return;
         }
 
         //端口打开成功后，检查连接打印机所使用的打印机指令ESC、TSC
@@ -166,11 +228,30 @@ public class DeviceConnFactoryManager {
      */
     private void queryCommand() {
         //开启读取打印机返回数据线程
+        responses.clear();
         reader = new PrinterReader();
         reader.start(); //读取数据线程
+        probeStartedAt = System.currentTimeMillis();
+        PrinterCommand cached = capabilityStore != null ? capabilityStore.getPrinterCommand(macAddress) : null;
+        if (cached != null) {
+            useCachedPrinterCommand(cached);
+            return;
+        }
         //查询打印机所使用指令
-        queryPrinterCommand(); //小票机连接不上  注释这行，添加下面那三行代码。使用ESC指令
+        detectedFromCache = false;
+        startProbe(0, PROBE_ORDER[0]);
+
+    }
 
+    /**
+     * 直接使用上次识别的指令集，随后发送一次该指令集的状态查询确认；
+     * 超时未应答说明打印机已更换或指令集已改变，清除记录后重新逐个查询
+     */
+    private void useCachedPrinterCommand(PrinterCommand command) {
+        statusDecoder = StatusDecoder.forCommand(command);
+        onPrinterCommand(command);
+        detectedFromCache = true;
+        startProbe(-1, command);
     }
 
     /**
@@ -187,6 +268,13 @@ public class DeviceConnFactoryManager {
         return isOpenPort;
     }
 
+    /**
+     * 是否接收新任务：端口已打开，或正在自动重连（任务留在暂停的队列中，重连成功后执行）
+     */
+    public boolean isAcceptingJobs() {
+        return isOpenPort || supervisor.isReconnecting();
+    }
+
     /**
      * 获取连接蓝牙的物理地址
      */
@@ -198,6 +286,7 @@ public class DeviceConnFactoryManager {
      * 关闭端口
      */
     public void closePort() {
+        cancelProbe();
         if (this.mPort != null) {
             if(reader!=null) {
                 reader.cancel();
@@ -216,22 +305,50 @@ public class DeviceConnFactoryManager {
 
     public static void closeAllPort() {
         for (DeviceConnFactoryManager deviceConnFactoryManager : deviceConnFactoryManagers.values()) {
-            if (deviceConnFactoryManager != null) {
-                Log.e(TAG, "******************* close All Port macAddress -> " + deviceConnFactoryManager.macAddress);
+            Log.e(TAG, "******************* close All Port macAddress -> " + deviceConnFactoryManager.macAddress);
+
+            deviceConnFactoryManager.setAutoReconnect(false);
+            deviceConnFactoryManager.closePort();
+            deviceConnFactoryManager.jobQueue.clear();
+        }
+        deviceConnFactoryManagers.clear();
+    }
 
-                deviceConnFactoryManager.closePort();
-                deviceConnFactoryManagers.put(deviceConnFactoryManager.macAddress, null);
+    /**
+     * 已打开端口的打印机地址
+     */
+    public static List<String> getConnectedAddresses() {
+        List<String> addresses = new ArrayList<>();
+        for (DeviceConnFactoryManager deviceConnFactoryManager : deviceConnFactoryManagers.values()) {
+            if (deviceConnFactoryManager.getConnState()) {
+                addresses.add(deviceConnFactoryManager.macAddress);
             }
         }
+        return addresses;
+    }
+
+    /**
+     * 本打印机的串行任务队列，不同打印机的任务并行执行
+     */
+    public PrinterJobQueue getJobQueue() {
+        return jobQueue;
     }
 
     private DeviceConnFactoryManager(Build build) {
         this.connMethod = build.connMethod;
         this.macAddress = build.macAddress;
         this.mContext = build.context;
+        this.capabilityStore = build.context != null ? PrinterCapabilityStore.getInstance(build.context) : null;
         deviceConnFactoryManagers.put(build.macAddress, this);
     }
 
+    /**
+     * 打印机能力记录，未设置 Context 时为 null
+     */
+    PrinterCapabilityStore getCapabilityStore() {
+        return capabilityStore;
+    }
+
     /**
      * 获取当前打印机指令
      *
@@ -273,24 +390,111 @@ public class DeviceConnFactoryManager {
         try {
             this.mPort.writeDataImmediately(data, 0, data.size());
         } catch (Exception e) {//异常中断发送
-            mHandler.obtainMessage(Constant.abnormal_Disconnection).sendToTarget();
+            onAbnormalDisconnection();
 //            e.printStackTrace();
 
         }
     }
-    public void sendByteDataImmediately(final byte [] data) {
-        if (this.mPort != null) {
-            Vector<Byte> datas = new Vector<Byte>();
-            for (byte datum : data) {
-                datas.add(Byte.valueOf(datum));
+    /**
+     * 直接写出已打包的指令字节，不经过 Vector&lt;Byte&gt; 装箱
+     */
+    public void sendDataImmediately(final byte[] data) {
+        sendDataImmediately(data, 0, data.length);
+    }
+
+    /**
+     * 写出 byte[] 中 [offset, offset + length) 的指令字节
+     */
+    public void sendDataImmediately(final byte[] data, int offset, int length) {
+        writeData(data, offset, length);
+    }
+
+    /**
+     * 按打印机缓冲区状态流控分段写出打印任务，写端口失败时返回 false
+     */
+    public boolean sendDataFlowControlled(final byte[] data) {
+        return flowControlWriter.write(data, 0, data.length);
+    }
+
+    /**
+     * 写端口，异常中断时发送异常断开消息并返回 false
+     */
+    boolean writeData(byte[] data, int offset, int length) {
+        if (supervisor.isReconnecting()) {
+            // 断线前未写完的任务直接丢弃，不写到重连后的端口上
+            return false;
+        }
+        try {
+            writePort(data, offset, length);
+            lastWriteAt = System.currentTimeMillis();
+            return true;
+        } catch (IOException e) {//异常中断发送
+            onAbnormalDisconnection();
+            return false;
+        }
+    }
+
+    /**
+     * 写出连接管理指令（探测、心跳），重连期间也照常写出
+     */
+    private void sendControl(byte[] data) {
+        try {
+            writePort(data, 0, data.length);
+        } catch (IOException e) {
+            onAbnormalDisconnection();
+        }
+    }
+
+    /**
+     * 写出 ByteBuffer 中 position 到 limit 之间的指令字节，写出后 position 移至 limit，写出失败时停止
+     * 堆内缓冲区直接写出其底层数组，直接缓冲区经复用的中转数组分段写出；与 byte[] 一样经 {@link #writeData} 写出
+     */
+    public void sendDataImmediately(final ByteBuffer data) {
+        if (data.hasArray()) {
+            if (writeData(data.array(), data.arrayOffset() + data.position(), data.remaining())) {
+                data.position(data.limit());
             }
-            try {
-                this.mPort.writeDataImmediately(datas, 0, datas.size());
-            } catch (IOException e) {//异常中断
-                mHandler.obtainMessage(Constant.abnormal_Disconnection).sendToTarget();
+            return;
+        }
+        synchronized (transferBuffer) {
+            while (data.hasRemaining()) {
+                int length = Math.min(data.remaining(), transferBuffer.length);
+                data.get(transferBuffer, 0, length);
+                if (!writeData(transferBuffer, 0, length)) {
+                    return;
+                }
             }
         }
     }
+
+    /**
+     * 分段写出指令
+     */
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        flowControlWriter.write(data, offset, length);
+    }
+
+    public void sendByteDataImmediately(final byte [] data) {
+        sendDataImmediately(data, 0, data.length);
+    }
+
+    /**
+     * 写端口，端口未打开时忽略
+     */
+    private void writePort(byte[] data, int offset, int length) throws IOException {
+        PortManager port = this.mPort;
+        if (port == null) {
+            return;
+        }
+        OutputStream outputStream = port.getOutputStream();
+        if (outputStream == null) {
+            return;
+        }
+        outputStream.write(data, offset, length);
+        outputStream.flush();
+    }
+
     public int readDataImmediately(byte[] buffer){
         int r = 0;
         if (this.mPort == null) {
@@ -300,7 +504,12 @@ public class DeviceConnFactoryManager {
         try {
             r =  this.mPort.readData(buffer);
         } catch (IOException e) {
+            // reader 为空说明端口是主动关闭的
+            boolean running = reader != null;
             closePort();
+            if (running) {
+                onAbnormalDisconnection();
+            }
         }
 
         return  r;
@@ -308,63 +517,143 @@ public class DeviceConnFactoryManager {
 
     /**
      * 查询打印机当前使用的指令（ESC、CPCL、TSC、）
+     * 发送一条状态查询，收到应答即确定指令集；超时后立即发送下一种指令集的查询
+     */
+    private void startProbe(int index, PrinterCommand command) {
+        synchronized (probeLock) {
+            probeIndex = index;
+            probeSentAt = 0;
+            probing = true;
+        }
+        sendProbe(command);
+    }
+
+    /**
+     * 经任务队列发送探测，与打印任务的写出互不穿插
      */
-    private void queryPrinterCommand() {
-        queryPrinterCommandFlag = ESC;
-        ThreadPool.getInstantiation().addSerialTask(new Runnable() {
+    private void sendProbe(final PrinterCommand command) {
+        final int generation;
+        synchronized (probeLock) {
+            generation = ++probeGeneration;
+        }
+        jobQueue.execute(new Runnable() {
             @Override
             public void run() {
-                //开启计时器，隔2000毫秒没有没返回值时发送查询打印机状态指令，先发票据，面单，标签
-                final ThreadFactoryBuilder threadFactoryBuilder = new ThreadFactoryBuilder("Timer");
-                final ScheduledExecutorService scheduledExecutorService = new ScheduledThreadPoolExecutor(1, threadFactoryBuilder);
-                scheduledExecutorService.scheduleAtFixedRate(threadFactoryBuilder.newThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (currentPrinterCommand == null && queryPrinterCommandFlag > TSC) {
-                            if (reader != null) {//三种状态，查询无返回值，发送连接失败广播
-                                reader.cancel();
-                                mPort.closePort();
-                                isOpenPort = false;
-
-                                scheduledExecutorService.shutdown();
-                            }
-                        }
-                        if (currentPrinterCommand != null) {
-                            if (!scheduledExecutorService.isShutdown()) {
-                                scheduledExecutorService.shutdown();
-                            }
-                            return;
-                        }
-                        switch (queryPrinterCommandFlag) {
-                            case ESC:
-                                //发送ESC查询打印机状态指令
-                                sendCommand = esc;
-                                break;
-                            case TSC:
-                                //发送ESC查询打印机状态指令
-                                sendCommand = tsc;
-                                break;
-                            case CPCL:
-                                //发送CPCL查询打印机状态指令
-                                sendCommand = cpcl;
-                                break;
-                            default:
-                                break;
-                        }
-                        Vector<Byte> data = new Vector<>(sendCommand.length);
-                        for (byte b : sendCommand) {
-                            data.add(b);
-                        }
-                        sendDataImmediately(data);
-                        queryPrinterCommandFlag++;
+                synchronized (probeLock) {
+                    if (!probing || generation != probeGeneration) {
+                        return;
+                    }
+                    probingCommand = command;
+                    sendCommand = command == PrinterCommand.TSC ? tsc : command == PrinterCommand.CPCL ? cpcl : esc;
+                    if (currentPrinterCommand == null) {
+                        statusDecoder = StatusDecoder.forCommand(command);
                     }
-                }), 1500, 1500, TimeUnit.MILLISECONDS);
+                    statusDecoder.expectStatus();
+                    probeSentAt = System.currentTimeMillis();
+                    long timeout = Math.min(PROBE_TIMEOUT_MAX_MS, Math.max(PROBE_TIMEOUT_MIN_MS, smoothedRttMs * 4));
+                    probeTimeout = ThreadPool.getInstantiation().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            onProbeTimeout(generation);
+                        }
+                    }, timeout);
+                }
+                sendControl(sendCommand);
+            }
+        }, PrinterJobQueue.Priority.SYSTEM);
+    }
+
+    /**
+     * 收到探测应答（读线程），返回 true 表示应答已作为指令集识别结果消费
+     */
+    private boolean onProbeReply() {
+        int index;
+        synchronized (probeLock) {
+            if (!probing || probeSentAt == 0) {
+                return false;
+            }
+            probing = false;
+            if (probeTimeout != null) {
+                probeTimeout.cancel(false);
+                probeTimeout = null;
             }
-        });
+            long now = System.currentTimeMillis();
+            smoothedRttMs = (smoothedRttMs * 7 + (now - probeSentAt)) / 8;
+            detectionMs = now - probeStartedAt;
+            index = probeIndex;
+        }
+        Log.i(TAG, "******************* printer command " + probingCommand + " detected in " + detectionMs + " ms");
+        if (index < 0) {
+            // 保存的指令集已确认，应答按状态正常解码
+            return false;
+        }
+        responses.clear();
+        statusDecoder.reset();
+        onPrinterCommand(probingCommand);
+        return true;
+    }
+
+    /**
+     * 停止探测，端口关闭时调用
+     */
+    private void cancelProbe() {
+        synchronized (probeLock) {
+            probing = false;
+            if (probeTimeout != null) {
+                probeTimeout.cancel(false);
+                probeTimeout = null;
+            }
+        }
+    }
+
+    /**
+     * 探测超时（共享定时器线程）
+     */
+    private void onProbeTimeout(int generation) {
+        int next;
+        synchronized (probeLock) {
+            if (!probing || generation != probeGeneration) {
+                return;
+            }
+            probeTimeout = null;
+            next = probeIndex + 1;
+            if (next >= PROBE_ORDER.length) {
+                probing = false;
+            }
+        }
+        if (next == 0) {
+            Log.w(TAG, "******************* cached printer command " + currentPrinterCommand + " not confirmed, probing");
+            capabilityStore.remove(macAddress);
+            flowControlWriter.reset(true);
+            currentPrinterCommand = null;
+            detectedFromCache = false;
+        }
+        if (next < PROBE_ORDER.length) {
+            startProbe(next, PROBE_ORDER[next]);
+            return;
+        }
+        //三种状态，查询无返回值，发送连接失败广播
+        Log.w(TAG, "******************* printer command not detected, close port");
+        closePort();
+        isOpenPort = false;
+        supervisor.onConnectFailed();
+    }
+
+    /**
+     * 指令集识别、重连与心跳统计
+     */
+    public Map<String, Object> getConnectionStats() {
+        Map<String, Object> ret = supervisor.getStats();
+        PrinterCommand command = currentPrinterCommand;
+        ret.put("printerCommand", command != null ? command.name() : null);
+        ret.put("detectionMs", detectionMs);
+        ret.put("detectedFromCache", detectedFromCache);
+        ret.put("probeRttMs", smoothedRttMs);
+        return ret;
     }
 
     class PrinterReader extends Thread {
-        private boolean isRun = false;
+        private volatile boolean isRun = false;
         private final byte[] buffer = new byte[100];
 
         public PrinterReader() {
@@ -376,23 +665,16 @@ public class DeviceConnFactoryManager {
             try {
                 while (isRun && mPort != null) {
                     //读取打印机返回信息,打印机没有返回纸返回-1
-                    Log.e(TAG,"******************* wait read ");
                     int len = readDataImmediately(buffer);
-                    Log.e(TAG,"******************* read "+len);
                     if (len > 0) {
-                        Message message = Message.obtain();
-                        message.what = READ_DATA;
-                        Bundle bundle = new Bundle();
-                        bundle.putInt(READ_DATA_CNT, len); //数据长度
-                        bundle.putByteArray(READ_BUFFER_ARRAY, buffer); //数据
-                        message.setData(bundle);
-                        mHandler.sendMessage(message);
+                        responses.write(buffer, 0, len);
+                        parseResponses();
                     }
                 }
             } catch (Exception e) {//异常断开
                 if (deviceConnFactoryManagers.get(macAddress) != null) {
                     closePort();
-                    mHandler.obtainMessage(Constant.abnormal_Disconnection).sendToTarget();
+                    onAbnormalDisconnection();
                 }
             }
         }
@@ -402,6 +684,145 @@ public class DeviceConnFactoryManager {
         }
     }
 
+    /**
+     * 解析应答缓冲区中的数据，在读线程上执行
+     * 探测期间收到的第一条应答即为查询指令集的应答；之后交给对应指令集的解码器
+     */
+    private void parseResponses() {
+        lastReplyAt = System.currentTimeMillis();
+        StatusDecoder decoder = statusDecoder;
+        if (decoder == null) {
+            responses.clear();
+            return;
+        }
+        if (onProbeReply()) {
+            return;
+        }
+        if (currentPrinterCommand == null) {
+            // 探测已结束仍未识别，丢弃
+            responses.clear();
+            return;
+        }
+        decoder.decode(responses, decoderSink);
+    }
+
+    private final StatusDecoder.Sink decoderSink = new StatusDecoder.Sink() {
+        @Override
+        public void onRealtimeStatus(int status) {
+            DeviceConnFactoryManager.this.onRealtimeStatus(status);
+        }
+
+        @Override
+        public void onBufferStatus() {
+            flowControlWriter.onBufferStatus();
+            DeviceConnFactoryManager.this.onBufferStatus();
+        }
+    };
+
+    private void onPrinterCommand(PrinterCommand command) {
+        currentPrinterCommand = command;
+        if (capabilityStore != null) {
+            capabilityStore.putPrinterCommand(macAddress, command);
+        }
+        supervisor.onLinkUp();
+        sendStateBroadcast(CONN_STATE_CONNECTED);
+        PrinterStatusListener listener = statusListener;
+        if (listener != null) {
+            listener.onPrinterCommand(macAddress, command);
+        }
+    }
+
+    private void onRealtimeStatus(int status) {
+        if (status != 0) {
+            Log.d(TAG, "******************* printer status " + status);
+        }
+        PrinterStatusListener listener = statusListener;
+        if (listener != null) {
+            listener.onRealtimeStatus(macAddress, status);
+        }
+    }
+
+    private void onBufferStatus() {
+        if (mContext != null) {
+            Intent intent = new Intent(ACTION_QUERY_PRINTER_STATE);
+            intent.putExtra(DEVICE_ID, macAddress);
+            mContext.sendBroadcast(intent);
+        }
+        PrinterStatusListener listener = statusListener;
+        if (listener != null) {
+            listener.onBufferStatus(macAddress);
+        }
+    }
+
+    /**
+     * 异常断开：发送断开广播并通知监听
+     */
+    private void onAbnormalDisconnection() {
+        flowControlWriter.onDisconnected();
+        mHandler.obtainMessage(Constant.abnormal_Disconnection).sendToTarget();
+        PrinterStatusListener listener = statusListener;
+        if (listener != null) {
+            listener.onDisconnected(macAddress);
+        }
+        supervisor.onLinkLost();
+    }
+
+    /**
+     * 心跳连续未应答
+     */
+    void onKeepaliveTimeout() {
+        Log.w(TAG, "******************* keepalive timeout " + macAddress);
+        closePort();
+        onAbnormalDisconnection();
+    }
+
+    /**
+     * 发送一次当前指令集的状态查询作为心跳
+     */
+    void sendKeepalive() {
+        jobQueue.execute(new Runnable() {
+            @Override
+            public void run() {
+                StatusDecoder decoder = statusDecoder;
+                if (decoder != null && sendCommand != null) {
+                    decoder.expectStatus();
+                    sendControl(sendCommand);
+                }
+            }
+        }, PrinterJobQueue.Priority.SYSTEM);
+    }
+
+    long getLastReplyAt() {
+        return lastReplyAt;
+    }
+
+    /**
+     * 最近一次收到应答或写出成功的时间
+     */
+    long getLastActivity() {
+        return Math.max(lastReplyAt, lastWriteAt);
+    }
+
+    /**
+     * 开启或关闭断线自动重连；主动断开连接前应关闭
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        supervisor.setEnabled(autoReconnect);
+    }
+
+    /**
+     * 打印机不应答 GS r 1，记录下来，下次连接不再等待
+     */
+    void onBarrierUnsupported() {
+        if (capabilityStore != null) {
+            capabilityStore.putBarrierSupported(macAddress, false);
+        }
+    }
+
+    public void setStatusListener(PrinterStatusListener listener) {
+        this.statusListener = listener;
+    }
+
     @SuppressLint("HandlerLeak")
     private final Handler mHandler = new Handler() {
         @Override
@@ -413,92 +834,6 @@ public class DeviceConnFactoryManager {
                     break;
                 case DEFAUIT_COMMAND://默认模式
 
-                    break;
-                case READ_DATA:
-                    int cnt = msg.getData().getInt(READ_DATA_CNT); //数据长度 >0;
-                    byte[] buffer = msg.getData().getByteArray(READ_BUFFER_ARRAY);  //数据
-                    //这里只对查询状态返回值做处理，其它返回值可参考编程手册来解析
-                    if (buffer == null) {
-                        return;
-                    }
-                    int result = judgeResponseType(buffer[0]); //数据右移
-                    String status = "";
-                    if (sendCommand == esc) {
-                        //设置当前打印机模式为ESC模式
-                        if (currentPrinterCommand == null) {
-                            currentPrinterCommand = PrinterCommand.ESC;
-                            sendStateBroadcast(CONN_STATE_CONNECTED);
-                        } else {//查询打印机状态
-                            if (result == 0) {//打印机状态查询
-                                Intent intent = new Intent(ACTION_QUERY_PRINTER_STATE);
-                                intent.putExtra(DEVICE_ID, macAddress);
-                                if(mContext!=null){
-                                    mContext.sendBroadcast(intent);
-                                }
-                            } else if (result == 1) {//查询打印机实时状态
-                                if ((buffer[0] & ESC_STATE_PAPER_ERR) > 0) {
-                                    status += "*******************  Printer out of paper";
-                                }
-                                if ((buffer[0] & ESC_STATE_COVER_OPEN) > 0) {
-                                    status += "*******************  Printer open cover";
-                                }
-                                if ((buffer[0] & ESC_STATE_ERR_OCCURS) > 0) {
-                                    status += "*******************  Printer error";
-                                }
-                                Log.d(TAG, status);
-                            }
-                        }
-                    }else if (sendCommand == tsc) {
-                        //设置当前打印机模式为TSC模式
-                        if (currentPrinterCommand == null) {
-                            currentPrinterCommand = PrinterCommand.TSC;
-                            sendStateBroadcast(CONN_STATE_CONNECTED);
-                        } else {
-                            if (cnt == 1) {//查询打印机实时状态
-                                if ((buffer[0] & TSC_STATE_PAPER_ERR) > 0) {
-                                    //缺纸
-                                    status += "*******************  Printer out of paper";
-                                }
-                                if ((buffer[0] & TSC_STATE_COVER_OPEN) > 0) {
-                                    //开盖
-                                    status += "*******************  Printer open cover";
-                                }
-                                if ((buffer[0] & TSC_STATE_ERR_OCCURS) > 0) {
-                                    //打印机报错
-                                    status += "*******************  Printer error";
-                                }
-                                Log.d(TAG, status);
-                            } else {//打印机状态查询
-                                Intent intent = new Intent(ACTION_QUERY_PRINTER_STATE);
-                                intent.putExtra(DEVICE_ID, macAddress);
-                                if(mContext!=null){
-                                    mContext.sendBroadcast(intent);
-                                }
-                            }
-                        }
-                    }else if(sendCommand==cpcl){
-                        if (currentPrinterCommand == null) {
-                            currentPrinterCommand = PrinterCommand.CPCL;
-                            sendStateBroadcast(CONN_STATE_CONNECTED);
-                        }else {
-                            if (cnt == 1) {
-
-                                if ((buffer[0] ==CPCL_STATE_PAPER_ERR)) {//缺纸
-                                    status += "*******************  Printer out of paper";
-                                }
-                                if ((buffer[0] ==CPCL_STATE_COVER_OPEN)) {//开盖
-                                    status += "*******************  Printer open cover";
-                                }
-                                Log.d(TAG, status);
-                            } else {//打印机状态查询
-                                Intent intent = new Intent(ACTION_QUERY_PRINTER_STATE);
-                                intent.putExtra(DEVICE_ID, macAddress);
-                                if(mContext!=null){
-                                    mContext.sendBroadcast(intent);
-                                }
-                            }
-                        }
-                    }
                     break;
                 default:
                     break;
@@ -518,11 +853,4 @@ public class DeviceConnFactoryManager {
         }
     }
 
-    /**
-     * 判断是实时状态（10 04 02）还是查询状态（1D 72 01）
-     */
-    private int judgeResponseType(byte r) {
-        return (byte) ((r & FLAG) >> 4);
-    }
-
 }
\ No newline at end of file
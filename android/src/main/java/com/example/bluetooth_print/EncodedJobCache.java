@@ -0,0 +1,96 @@
+package com.example.bluetooth_print;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 已编码打印任务缓存
+ * 以 config、data 内容及打印机指令类型的 SHA-256 作为键，按字节预算做 LRU 淘汰
+ */
+public class EncodedJobCache extends ByteArrayLruCache {
+    /**
+     * 默认缓存字节预算 4MB
+     */
+    private static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static EncodedJobCache instance;
+
+    private EncodedJobCache(long maxBytes) {
+        super(maxBytes);
+    }
+
+    public static synchronized EncodedJobCache getInstance() {
+        if (instance == null) {
+            instance = new EncodedJobCache(DEFAULT_MAX_BYTES);
+        }
+        return instance;
+    }
+
+    /**
+     * 计算打印任务的稳定键：Map 按键排序，与 HashMap 迭代顺序无关
+     * data 为 Map 列表或紧凑二进制格式的 byte[]
+     */
+    public static String keyOf(PrinterCommand printerCommand, Map<String, Object> config, Object data) {
+        MessageDigest digest = newDigest();
+        update(digest, printerCommand.name());
+        update(digest, config);
+        update(digest, data);
+        return toHex(digest.digest());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void update(MessageDigest digest, Object value) {
+        if (value == null) {
+            digest.update((byte) 'N');
+        } else if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(UTF_8);
+            digest.update((byte) 'S');
+            updateInt(digest, bytes.length);
+            digest.update(bytes);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            digest.update((byte) (value instanceof Boolean ? 'B' : 'I'));
+            update(digest, value.toString());
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            digest.update((byte) 'Y');
+            updateInt(digest, bytes.length);
+            digest.update(bytes);
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) value;
+            List<String> keys = new ArrayList<>(map.size());
+            for (Object key : map.keySet()) {
+                keys.add(String.valueOf(key));
+            }
+            Collections.sort(keys);
+            digest.update((byte) 'M');
+            updateInt(digest, keys.size());
+            for (String key : keys) {
+                update(digest, key);
+                update(digest, map.get(key));
+            }
+        } else if (value instanceof List) {
+            List<Object> items = (List<Object>) value;
+            digest.update((byte) 'L');
+            updateInt(digest, items.size());
+            for (Object item : items) {
+                update(digest, item);
+            }
+        } else {
+            digest.update((byte) 'O');
+            update(digest, value.toString());
+        }
+    }
+
+    private static void updateInt(MessageDigest digest, int value) {
+        digest.update((byte) (value >> 24));
+        digest.update((byte) (value >> 16));
+        digest.update((byte) (value >> 8));
+        digest.update((byte) value);
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.bluetooth_print;
+
+import com.gprinter.command.EscCommand;
+
+import java.nio.charset.Charset;
+
+/**
+ * ESC/POS 票据指令构建，指令格式与 SDK EscCommand 保持一致，直接写入原始字节缓冲区
+ */
+public class EscCommandBuffer extends CommandBuffer {
+    private static final Charset CHARSET = Charset.forName("GB18030");
+
+    private static final int ESC = 0x1B;
+    private static final int FS = 0x1C;
+    private static final int GS = 0x1D;
+    private static final int LF = 0x0A;
+
+    /**
+     * 打印机当前的代码页，null 为初始化后的默认状态
+     */
+    private CodePage codePage;
+
+    public EscCommandBuffer() {
+        super();
+    }
+
+    public EscCommandBuffer(int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * 初始化打印机 ESC @
+     */
+    public void addInitializePrinter() {
+        add(ESC, '@');
+        codePage = null;
+    }
+
+    /**
+     * 打印并换行 LF
+     */
+    public void addPrintAndLineFeed() {
+        add(LF);
+    }
+
+    /**
+     * 打印并走纸 n 行 ESC d n
+     */
+    public void addPrintAndFeedLines(byte n) {
+        add(ESC, 'd', n);
+    }
+
+    /**
+     * 选择对齐方式 ESC a n
+     */
+    public void addSelectJustification(EscCommand.JUSTIFICATION justification) {
+        add(ESC, 'a', justification.getValue());
+    }
+
+    /**
+     * 设置绝对打印位置 ESC $ nL nH
+     */
+    public void addSetAbsolutePrintPosition(short position) {
+        add(ESC, '$');
+        addShortLE(position);
+    }
+
+    /**
+     * 设置相对打印位置 ESC \ nL nH
+     */
+    public void addSetRelativePrintPosition(short position) {
+        add(ESC, '\\');
+        addShortLE(position);
+    }
+
+    /**
+     * 选择打印模式 ESC ! n
+     */
+    public void addSelectPrintModes(EscCommand.FONT font, EscCommand.ENABLE emphasized, EscCommand.ENABLE doubleHeight,
+                                    EscCommand.ENABLE doubleWidth, EscCommand.ENABLE underline) {
+        int mode = 0;
+        if (font == EscCommand.FONT.FONTB) {
+            mode |= 0x01;
+        }
+        if (emphasized == EscCommand.ENABLE.ON) {
+            mode |= 0x08;
+        }
+        if (doubleHeight == EscCommand.ENABLE.ON) {
+            mode |= 0x10;
+        }
+        if (doubleWidth == EscCommand.ENABLE.ON) {
+            mode |= 0x20;
+        }
+        if (underline == EscCommand.ENABLE.ON) {
+            mode |= 0x80;
+        }
+        add(ESC, '!', mode);
+    }
+
+    /**
+     * 设置汉字字符模式 FS ! n
+     */
+    public void addSetKanjiFontMode(EscCommand.ENABLE doubleWidth, EscCommand.ENABLE doubleHeight, EscCommand.ENABLE underline) {
+        int mode = 0;
+        if (doubleWidth == EscCommand.ENABLE.ON) {
+            mode |= 0x04;
+        }
+        if (doubleHeight == EscCommand.ENABLE.ON) {
+            mode |= 0x08;
+        }
+        if (underline == EscCommand.ENABLE.ON) {
+            mode |= 0x80;
+        }
+        add(FS, '!', mode);
+    }
+
+    /**
+     * 按代码页打印文本，直接编码到缓冲区；文本含非 ASCII 字符且打印机当前不是该代码页时先切换
+     * 初始化后的默认状态按 GBK 处理，与原来不发送切换指令的行为一致
+     */
+    public void addText(String text, CodePage page) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        if (page != codePage && (page != CodePage.GBK || codePage != null) && !isAscii(text)) {
+            addSelectCodePage(page);
+        }
+        ensureCapacity(page.maxLength(text.length()));
+        count += page.encode(text, buffer, count);
+    }
+
+    /**
+     * 切换代码页：单字节代码页为 FS . 取消汉字模式、ESC t n 选择字符代码表，GBK 为 FS & 选择汉字模式
+     */
+    public void addSelectCodePage(CodePage page) {
+        if (page.isSingleByte()) {
+            add(FS, '.');
+            add(ESC, 't', page.escCode);
+        } else {
+            add(FS, '&');
+        }
+        codePage = page;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 选择 HRI 字符打印位置 GS H n
+     */
+    public void addSelectPrintingPositionForHRICharacters(EscCommand.HRI_POSITION position) {
+        add(GS, 'H', position.getValue());
+    }
+
+    /**
+     * 设置条码高度 GS h n
+     */
+    public void addSetBarcodeHeight(byte height) {
+        add(GS, 'h', height);
+    }
+
+    /**
+     * 设置条码宽度 GS w n
+     */
+    public void addSetBarcodeWidth(byte width) {
+        add(GS, 'w', width);
+    }
+
+    /**
+     * 打印 CODE128 条码 GS k 73 n d1...dn
+     */
+    public void addCODE128(String content) {
+        byte[] data = content.getBytes(CHARSET);
+        add(GS, 'k', 73);
+        add(data.length);
+        addArray(data);
+    }
+
+    /**
+     * CODE128 B 字符集前缀
+     */
+    public String genCodeB(String content) {
+        return "{B" + content;
+    }
+
+    /**
+     * 设置 QRCode 纠错等级 GS ( k 3 0 49 69 n
+     */
+    public void addSelectErrorCorrectionLevelForQRCode(byte level) {
+        add(GS, '(', 'k');
+        add(3, 0);
+        add(49, 69, level);
+    }
+
+    /**
+     * 设置 QRCode 模块大小 GS ( k 3 0 49 67 n
+     */
+    public void addSelectSizeOfModuleForQRCode(byte size) {
+        add(GS, '(', 'k');
+        add(3, 0);
+        add(49, 67, size);
+    }
+
+    /**
+     * 存储 QRCode 数据 GS ( k pL pH 49 80 48 d1...dk
+     */
+    public void addStoreQRCodeData(String content) {
+        byte[] data = content.getBytes(Charset.forName("UTF-8"));
+        addStoreQRCodeData(data, 0, data.length);
+    }
+
+    /**
+     * 存储已编码为 UTF-8 的 QRCode 数据
+     */
+    public void addStoreQRCodeData(byte[] data, int offset, int length) {
+        add(GS, '(', 'k');
+        addShortLE(length + 3);
+        add(49, 80, 48);
+        addArray(data, offset, length);
+    }
+
+    /**
+     * 打印已存储的 QRCode GS ( k 3 0 49 81 48
+     */
+    public void addPrintQRCode() {
+        add(GS, '(', 'k');
+        add(3, 0);
+        add(49, 81, 48);
+    }
+
+    /**
+     * 打印光栅位图 GS v 0，数据为点阵中 top 行起 rows 行、字节列 [left, right) 的部分
+     */
+    public void addRastBitImage(byte[] bits, int widthBytes, int left, int right, int top, int rows) {
+        add(GS, 'v', '0');
+        add(0);
+        addShortLE(right - left);
+        addShortLE(rows);
+        addRows(bits, widthBytes, left, right, top, rows, false);
+    }
+
+    /**
+     * 打印并走纸 n 点行 ESC J n，超过 255 时分多次发送
+     */
+    public void addPrintAndFeedDots(int dots) {
+        for (; dots > 0; dots -= 255) {
+            add(ESC, 'J', Math.min(dots, 255));
+        }
+    }
+
+    /**
+     * 定义 NV 图形（光栅格式）GS ( L / GS 8 L m=48 fn=67 a=48 kc1 kc2 b=1 xL xH yL yH c=49 d1...dk
+     * 数据超过 GS ( L 的长度上限时使用 4 字节长度的 GS 8 L
+     */
+    public void addDefineNvGraphics(int kc1, int kc2, int widthDots, int height, byte[] data, int offset, int length) {
+        int parameters = 11 + length;
+        if (parameters <= 0xFFFF) {
+            add(GS, '(', 'L');
+            addShortLE(parameters);
+        } else {
+            add(GS, '8', 'L');
+            addShortLE(parameters & 0xFFFF);
+            addShortLE(parameters >>> 16);
+        }
+        add(48, 67, 48);
+        add(kc1, kc2, 1);
+        addShortLE(widthDots);
+        addShortLE(height);
+        add(49);
+        addArray(data, offset, length);
+    }
+
+    /**
+     * 打印 NV 图形 GS ( L 6 0 48 69 kc1 kc2 1 1
+     */
+    public void addPrintNvGraphics(int kc1, int kc2) {
+        add(GS, '(', 'L');
+        add(6, 0);
+        add(48, 69, kc1);
+        add(kc2, 1, 1);
+    }
+
+    /**
+     * 全切纸 GS V 1
+     */
+    public void addCutPaper() {
+        add(GS, 'V', 1);
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.bluetooth_print;
+
+/**
+ * ESC/POS 指令边界扫描
+ * 只识别指令长度，不解析指令含义；用于在指令之间（而不是指令参数或位图数据中间）切分数据，
+ * 切分处可以安全插入 GS r 1 或其它控制指令
+ */
+public final class EscCommandScanner {
+    private static final int HT = 0x09;
+    private static final int LF = 0x0A;
+    private static final int FF = 0x0C;
+    private static final int CR = 0x0D;
+    private static final int DLE = 0x10;
+    private static final int FS = 0x1C;
+    private static final int ESC = 0x1B;
+    private static final int GS = 0x1D;
+
+    private EscCommandScanner() {
+    }
+
+    /**
+     * 从 position 开始的一条指令（或一段连续文本）的结束位置；数据不完整时返回 end
+     */
+    public static int commandEnd(byte[] data, int position, int end) {
+        int b = data[position] & 0xFF;
+        int length;
+        switch (b) {
+            case HT:
+            case LF:
+            case FF:
+            case CR:
+                length = 1;
+                break;
+            case ESC:
+                length = escLength(data, position, end);
+                break;
+            case GS:
+                length = gsLength(data, position, end);
+                break;
+            case FS:
+                length = fsLength(data, position, end);
+                break;
+            case DLE:
+                length = dleLength(data, position, end);
+                break;
+            default:
+                // 文本：GB18030 多字节字符的后续字节不小于 0x30，不会与控制字符混淆
+                int i = position + 1;
+                while (i < end && !isControl(data[i] & 0xFF)) {
+                    i++;
+                }
+                return i;
+        }
+        return length < 0 ? end : Math.min(end, position + length);
+    }
+
+    /**
+     * 是否为指令起始字节
+     */
+    private static boolean isControl(int b) {
+        return b == HT || b == LF || b == FF || b == CR || b == DLE || b == FS || b == ESC || b == GS;
+    }
+
+    /**
+     * 读取 position + offset 处的无符号字节，越界返回 -1
+     */
+    private static int at(byte[] data, int position, int offset, int end) {
+        int i = position + offset;
+        return i < end ? data[i] & 0xFF : -1;
+    }
+
+    private static int escLength(byte[] data, int position, int end) {
+        int n = at(data, position, 1, end);
+        switch (n) {
+            case -1:
+                return -1;
+            case '@':
+            case '2':
+            case '<':
+                return 2;
+            case '$':
+            case '\\':
+            case 'B':
+            case 'c':
+                return 4;
+            case 'p':
+                return 5;
+            case '*': {
+                int m = at(data, position, 2, end);
+                int nL = at(data, position, 3, end);
+                int nH = at(data, position, 4, end);
+                if (nH < 0) {
+                    return -1;
+                }
+                return 5 + (nL + nH * 256) * (m == 32 || m == 33 ? 3 : 1);
+            }
+            case 'D':
+                return untilNul(data, position, 2, end);
+            default:
+                // ESC ! n、ESC a n、ESC d n、ESC E n 等单参数指令
+                return 3;
+        }
+    }
+
+    private static int gsLength(byte[] data, int position, int end) {
+        int n = at(data, position, 1, end);
+        switch (n) {
+            case -1:
+                return -1;
+            case 'L':
+            case 'W':
+            case '$':
+            case '\\':
+            case 'P':
+                return 4;
+            case 'V': {
+                int m = at(data, position, 2, end);
+                return m == 65 || m == 66 || m == 97 || m == 98 ? 4 : 3;
+            }
+            case 'k': {
+                int m = at(data, position, 2, end);
+                if (m < 0) {
+                    return -1;
+                }
+                if (m <= 6) {
+                    return untilNul(data, position, 3, end);
+                }
+                int length = at(data, position, 3, end);
+                return length < 0 ? -1 : 4 + length;
+            }
+            case '(': {
+                int pL = at(data, position, 3, end);
+                int pH = at(data, position, 4, end);
+                return pH < 0 ? -1 : 5 + pL + pH * 256;
+            }
+            case '8': {
+                // GS 8 L p1 p2 p3 p4 m fn ...，与 GS ( L 相同但参数长度为 4 字节
+                int p1 = at(data, position, 3, end);
+                int p2 = at(data, position, 4, end);
+                int p3 = at(data, position, 5, end);
+                int p4 = at(data, position, 6, end);
+                if (p4 < 0) {
+                    return -1;
+                }
+                long length = 7L + p1 + (p2 << 8) + (p3 << 16) + ((long) p4 << 24);
+                return length > Integer.MAX_VALUE ? -1 : (int) length;
+            }
+            case 'v': {
+                // GS v 0 m xL xH yL yH d1...dk
+                int xL = at(data, position, 4, end);
+                int xH = at(data, position, 5, end);
+                int yL = at(data, position, 6, end);
+                int yH = at(data, position, 7, end);
+                return yH < 0 ? -1 : 8 + (xL + xH * 256) * (yL + yH * 256);
+            }
+            case '*': {
+                int x = at(data, position, 2, end);
+                int y = at(data, position, 3, end);
+                return y < 0 ? -1 : 4 + x * y * 8;
+            }
+            default:
+                // GS ! n、GS H n、GS h n、GS w n、GS r n 等单参数指令
+                return 3;
+        }
+    }
+
+    private static int fsLength(byte[] data, int position, int end) {
+        int n = at(data, position, 1, end);
+        switch (n) {
+            case -1:
+                return -1;
+            case '&':
+            case '.':
+                return 2;
+            case 'p':
+                return 4;
+            default:
+                return 3;
+        }
+    }
+
+    private static int dleLength(byte[] data, int position, int end) {
+        int n = at(data, position, 1, end);
+        if (n < 0) {
+            return -1;
+        }
+        // DLE DC4 fn m t 实时指令
+        return n == 0x14 ? 5 : 3;
+    }
+
+    /**
+     * 以 NUL 结尾的变长指令长度
+     */
+    private static int untilNul(byte[] data, int position, int offset, int end) {
+        for (int i = position + offset; i < end; i++) {
+            if (data[i] == 0) {
+                return i - position + 1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.bluetooth_print;
+
+/**
+ * ESC 应答解码
+ * DLE EOT n 应答固定位为 0xx1xx10，GS r n 应答固定位为 0xx0xxxx，按固定位区分类型，不依赖读取边界；
+ * 自动状态回传（ASB）为 4 字节，首字节固定位为 0xx1xx00，整条跳过
+ */
+public class EscStatusDecoder extends StatusDecoder {
+    /**
+     * DLE EOT 2 脱机状态：开盖
+     */
+    private static final int OFFLINE_COVER_OPEN = 0x04;
+
+    /**
+     * DLE EOT 2 脱机状态：缺纸停止打印
+     */
+    private static final int OFFLINE_PAPER_END = 0x20;
+
+    /**
+     * DLE EOT 2 脱机状态：出错
+     */
+    private static final int OFFLINE_ERROR = 0x40;
+
+    private static final int ASB_LENGTH = 4;
+
+    /**
+     * 当前 ASB 还需跳过的字节数
+     */
+    private int skip;
+
+    @Override
+    public void decode(ResponseRingBuffer in, Sink sink) {
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (skip > 0) {
+                skip--;
+            } else if ((b & 0x93) == 0x12) {
+                sink.onRealtimeStatus(((b & OFFLINE_PAPER_END) != 0 ? PrinterStatusListener.STATUS_PAPER_OUT : 0)
+                        | ((b & OFFLINE_COVER_OPEN) != 0 ? PrinterStatusListener.STATUS_COVER_OPEN : 0)
+                        | ((b & OFFLINE_ERROR) != 0 ? PrinterStatusListener.STATUS_ERROR : 0));
+            } else if ((b & 0x93) == 0x10) {
+                skip = ASB_LENGTH - 1;
+            } else if ((b & 0x90) == 0) {
+                sink.onBufferStatus();
+            }
+            // 其它字节不是状态应答，忽略
+        }
+    }
+
+    @Override
+    public void reset() {
+        skip = 0;
+    }
+}
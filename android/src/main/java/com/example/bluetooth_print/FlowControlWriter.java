@@ -0,0 +1,168 @@
+package com.example.bluetooth_print;
+
+import android.util.Log;
+
+/**
+ * 流控分段写出
+ * 任务按固定大小分段写出；ESC 打印机在每段之后追加 GS r 1（缓冲区打印完成查询），
+ * 打印机处理完该段之前的数据才会应答，未应答的分段数达到窗口大小时暂停写出，避免打印机缓冲区溢出
+ * 打印机在超时时间内未应答时视为不支持，此后只分段写出不等待
+ * ESC 数据按指令边界分段，GS r 1 与插入执行的控制指令不会落在指令参数或位图数据中间
+ */
+public class FlowControlWriter {
+    private static final String TAG = FlowControlWriter.class.getSimpleName();
+
+    /**
+     * 缓冲区打印完成查询 GS r 1
+     */
+    private static final byte[] BARRIER = {0x1D, 0x72, 0x01};
+
+    /**
+     * 默认分段大小
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    /**
+     * 默认窗口：最多允许未应答的分段数
+     */
+    public static final int DEFAULT_WINDOW = 4;
+
+    /**
+     * 等待应答超时
+     */
+    private static final long ACK_TIMEOUT_MS = 3000;
+
+    private final DeviceConnFactoryManager device;
+
+    private final int chunkSize;
+
+    private final int window;
+
+    private final Object lock = new Object();
+
+    /**
+     * 已写出但未应答的分段数
+     */
+    private int outstanding;
+
+    /**
+     * 打印机是否应答 GS r 1；超时后置为 false 并保存
+     */
+    private volatile boolean barrierSupported = true;
+
+    public FlowControlWriter(DeviceConnFactoryManager device) {
+        this(device, DEFAULT_CHUNK_SIZE, DEFAULT_WINDOW);
+    }
+
+    public FlowControlWriter(DeviceConnFactoryManager device, int chunkSize, int window) {
+        this.device = device;
+        this.chunkSize = chunkSize;
+        this.window = window;
+    }
+
+    /**
+     * 分段写出 data 中 [offset, offset + length)，写端口失败时返回 false
+     */
+    public boolean write(byte[] data, int offset, int length) {
+        boolean esc = device.getCurrentPrinterCommand() == PrinterCommand.ESC;
+        boolean paced = esc && barrierSupported;
+        int end = offset + length;
+        int next;
+        for (int position = offset; position < end; position = next) {
+            next = esc ? chunkEnd(data, position, end) : Math.min(end, position + chunkSize);
+            if (position == offset || esc) {
+                device.getJobQueue().runUrgent();
+            }
+            if (paced) {
+                paced = awaitCredit();
+            }
+            if (!device.writeData(data, position, next - position)) {
+                return false;
+            }
+            if (paced) {
+                synchronized (lock) {
+                    outstanding++;
+                }
+                if (!device.writeData(BARRIER, 0, BARRIER.length)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 从 position 开始、不超过分段大小的最后一个指令边界；单条指令超过分段大小时整条写出
+     */
+    private int chunkEnd(byte[] data, int position, int end) {
+        int limit = Math.min(end, position + chunkSize);
+        int boundary = EscCommandScanner.commandEnd(data, position, end);
+        while (boundary < limit) {
+            int next = EscCommandScanner.commandEnd(data, boundary, end);
+            if (next > limit) {
+                break;
+            }
+            boundary = next;
+        }
+        return boundary;
+    }
+
+    /**
+     * 等待未应答分段数低于窗口，超时返回 false
+     */
+    private boolean awaitCredit() {
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + ACK_TIMEOUT_MS;
+            while (outstanding >= window) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    Log.w(TAG, "******************* buffer status reply timeout, flow control disabled");
+                    barrierSupported = false;
+                    outstanding = 0;
+                    device.onBarrierUnsupported();
+                    return false;
+                }
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 收到缓冲区打印完成应答（GS r 的回复）
+     */
+    public void onBufferStatus() {
+        synchronized (lock) {
+            if (outstanding > 0) {
+                outstanding--;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 连接断开，唤醒等待应答的写出线程
+     */
+    public void onDisconnected() {
+        synchronized (lock) {
+            outstanding = 0;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 端口重新打开时复位，barrierSupported 为已保存的打印机是否应答 GS r 1
+     */
+    public void reset(boolean barrierSupported) {
+        synchronized (lock) {
+            outstanding = 0;
+            this.barrierSupported = barrierSupported;
+            lock.notifyAll();
+        }
+    }
+}
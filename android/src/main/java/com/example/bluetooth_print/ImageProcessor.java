@@ -0,0 +1,259 @@
+package com.example.bluetooth_print;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 图片缩放与二值化，直接处理 int[] 像素，不经过 Bitmap 的逐点读写与中间位图
+ * 按面积平均缩放到打印宽度（384/576/832 点等），二值化后打包为每字节 8 点、高位在左、1 为黑点的点阵
+ * 缩放、阈值与有序抖动按行分段在编码线程池中并行处理；误差扩散依赖上一行的误差，在缩放完成后顺序处理
+ */
+public class ImageProcessor {
+    /**
+     * 二值化方式
+     */
+    public enum Dither {
+        //有序抖动（Bayer 16x16），与 SDK 默认效果相近，适合照片与渐变
+        ORDERED,
+        //固定阈值，适合文字、线条与二维码截图
+        THRESHOLD,
+        //Floyd–Steinberg 误差扩散，灰度层次最细，不能分段并行
+        DIFFUSION
+    }
+
+    private static final int THRESHOLD = 128;
+
+    /**
+     * 每段至少处理的输出行数，图片较小时不值得分段
+     */
+    private static final int MIN_BAND_ROWS = 64;
+
+    /**
+     * 分段数上限，与编码线程池的线程数相当
+     */
+    private static final int MAX_BANDS = 4;
+
+    /**
+     * 有序抖动阈值表，灰度小于等于对应阈值时为黑点；纯白始终为白点，纯黑始终为黑点
+     */
+    private static final int[] BAYER = new int[256];
+
+    static {
+        int[] matrix = {0};
+        for (int size = 1; size < 16; size *= 2) {
+            int[] next = new int[size * size * 4];
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int v = matrix[y * size + x] * 4;
+                    next[y * size * 2 + x] = v;
+                    next[y * size * 2 + x + size] = v + 2;
+                    next[(y + size) * size * 2 + x] = v + 3;
+                    next[(y + size) * size * 2 + x + size] = v + 1;
+                }
+            }
+            matrix = next;
+        }
+        for (int i = 0; i < 256; i++) {
+            BAYER[i] = (matrix[i] * 255 + 128) >> 8;
+        }
+    }
+
+    /**
+     * 按名称解析二值化方式（ordered、threshold、diffusion），无法识别时为 ORDERED
+     */
+    public static Dither parseDither(Object name) {
+        if (name instanceof String) {
+            for (Dither dither : Dither.values()) {
+                if (dither.name().equalsIgnoreCase((String) name)) {
+                    return dither;
+                }
+            }
+        }
+        return Dither.ORDERED;
+    }
+
+    /**
+     * 缩放到 dotsWidth（按 8 点对齐）宽、高度按比例的点阵
+     */
+    public static byte[] toBits(Bitmap bitmap, int dotsWidth, Dither dither) {
+        int sourceWidth = bitmap.getWidth();
+        int sourceHeight = bitmap.getHeight();
+        dotsWidth = (dotsWidth + 7) / 8 * 8;
+        int dotsHeight = Math.max(1, sourceHeight * dotsWidth / sourceWidth);
+        int[] pixels = new int[sourceWidth * sourceHeight];
+        bitmap.getPixels(pixels, 0, sourceWidth, 0, 0, sourceWidth, sourceHeight);
+        return toBits(pixels, sourceWidth, sourceHeight, dotsWidth, dotsHeight, dither);
+    }
+
+    /**
+     * pixels 为 ARGB 像素，透明部分按白色处理；dotsWidth 须为 8 的倍数
+     */
+    public static byte[] toBits(final int[] pixels, final int sourceWidth, final int sourceHeight,
+                                final int dotsWidth, final int dotsHeight, final Dither dither) {
+        final int[] gray = new int[dotsWidth * dotsHeight];
+        final byte[] bits = new byte[dotsWidth / 8 * dotsHeight];
+        int bands = Math.max(1, Math.min(MAX_BANDS, dotsHeight / MIN_BAND_ROWS));
+        Runnable[] tasks = new Runnable[bands];
+        for (int i = 0; i < bands; i++) {
+            final int top = dotsHeight * i / bands;
+            final int bottom = dotsHeight * (i + 1) / bands;
+            tasks[i] = new Runnable() {
+                @Override
+                public void run() {
+                    scale(pixels, sourceWidth, sourceHeight, gray, dotsWidth, dotsHeight, top, bottom);
+                    if (dither != Dither.DIFFUSION) {
+                        pack(gray, dotsWidth, top, bottom, dither, bits);
+                    }
+                }
+            };
+        }
+        runParallel(tasks);
+        if (dither == Dither.DIFFUSION) {
+            diffuse(gray, dotsWidth, dotsHeight);
+            pack(gray, dotsWidth, 0, dotsHeight, Dither.THRESHOLD, bits);
+        }
+        return bits;
+    }
+
+    /**
+     * 面积平均缩放输出行 [top, bottom)：每个输出点取其覆盖的源像素按覆盖面积加权的平均灰度
+     * 坐标放大为整数：源像素 i 覆盖 [i*dotsWidth, (i+1)*dotsWidth)，输出点 x 覆盖 [x*sourceWidth, (x+1)*sourceWidth)，纵向同理
+     */
+    private static void scale(int[] pixels, int sourceWidth, int sourceHeight, int[] gray, int dotsWidth, int dotsHeight, int top, int bottom) {
+        int[] row = new int[dotsWidth];
+        int[] sum = new int[dotsWidth];
+        for (int y = top; y < bottom; y++) {
+            long y0 = (long) y * sourceHeight;
+            long y1 = y0 + sourceHeight;
+            Arrays.fill(sum, 0);
+            for (int sy = (int) (y0 / dotsHeight); sy < sourceHeight && (long) sy * dotsHeight < y1; sy++) {
+                int weight = (int) (Math.min(y1, (long) (sy + 1) * dotsHeight) - Math.max(y0, (long) sy * dotsHeight));
+                scaleRow(pixels, sy * sourceWidth, sourceWidth, row, dotsWidth);
+                for (int x = 0; x < dotsWidth; x++) {
+                    sum[x] += row[x] * weight;
+                }
+            }
+            for (int x = 0, offset = y * dotsWidth; x < dotsWidth; x++) {
+                gray[offset + x] = sum[x] / sourceHeight;
+            }
+        }
+    }
+
+    /**
+     * 横向面积平均缩放一行源像素，结果为灰度 0~255
+     */
+    private static void scaleRow(int[] pixels, int offset, int sourceWidth, int[] row, int dotsWidth) {
+        for (int x = 0; x < dotsWidth; x++) {
+            long x0 = (long) x * sourceWidth;
+            long x1 = x0 + sourceWidth;
+            long sum = 0;
+            for (int sx = (int) (x0 / dotsWidth); sx < sourceWidth && (long) sx * dotsWidth < x1; sx++) {
+                long weight = Math.min(x1, (long) (sx + 1) * dotsWidth) - Math.max(x0, (long) sx * dotsWidth);
+                sum += luminance(pixels[offset + sx]) * weight;
+            }
+            row[x] = (int) (sum / sourceWidth);
+        }
+    }
+
+    /**
+     * 灰度 0~255（ITU-R BT.601 加权），按透明度与白色混合
+     */
+    private static int luminance(int argb) {
+        int y = (((argb >> 16) & 0xFF) * 299 + ((argb >> 8) & 0xFF) * 587 + (argb & 0xFF) * 114) / 1000;
+        int alpha = argb >>> 24;
+        return (y * alpha + 255 * (255 - alpha)) / 255;
+    }
+
+    /**
+     * Floyd–Steinberg 误差扩散，结果写回 gray（0 或 255）
+     */
+    private static void diffuse(int[] gray, int width, int height) {
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            boolean last = y == height - 1;
+            for (int x = 0; x < width; x++) {
+                int old = gray[offset + x];
+                int value = old < THRESHOLD ? 0 : 255;
+                int error = old - value;
+                gray[offset + x] = value;
+                if (error == 0) {
+                    continue;
+                }
+                if (x + 1 < width) {
+                    gray[offset + x + 1] += error * 7 / 16;
+                }
+                if (!last) {
+                    if (x > 0) {
+                        gray[offset + width + x - 1] += error * 3 / 16;
+                    }
+                    gray[offset + width + x] += error * 5 / 16;
+                    if (x + 1 < width) {
+                        gray[offset + width + x + 1] += error / 16;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 二值化输出行 [top, bottom) 并打包，每字节 8 点、高位在左、1 为黑点
+     */
+    private static void pack(int[] gray, int width, int top, int bottom, Dither dither, byte[] bits) {
+        int widthBytes = width / 8;
+        for (int y = top; y < bottom; y++) {
+            int offset = y * width;
+            int out = y * widthBytes;
+            int bayerRow = (y & 15) << 4;
+            for (int x = 0; x < width; x += 8) {
+                int b = 0;
+                for (int i = 0; i < 8; i++) {
+                    int value = gray[offset + x + i];
+                    boolean black = dither == Dither.ORDERED
+                            ? value <= BAYER[bayerRow | ((x + i) & 15)] && value < 255
+                            : value < THRESHOLD;
+                    if (black) {
+                        b |= 0x80 >> i;
+                    }
+                }
+                bits[out++] = (byte) b;
+            }
+        }
+    }
+
+    /**
+     * 第一段以外的分段提交到编码线程池，再在当前线程依次执行尚未开始的分段并等待其余分段完成
+     * 线程池已满或当前线程就是编码线程时也不会死等：未开始的分段总是在当前线程执行
+     */
+    private static void runParallel(Runnable[] tasks) {
+        FutureTask<?>[] futures = new FutureTask<?>[tasks.length];
+        for (int i = 0; i < tasks.length; i++) {
+            futures[i] = new FutureTask<Object>(tasks[i], null);
+            if (i > 0) {
+                try {
+                    ThreadPool.getInstantiation().encode(futures[i]);
+                } catch (RejectedExecutionException e) {
+                    // 在当前线程执行
+                }
+            }
+        }
+        for (FutureTask<?> future : futures) {
+            future.run();
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+}
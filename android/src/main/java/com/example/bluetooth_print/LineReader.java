@@ -0,0 +1,109 @@
+package com.example.bluetooth_print;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 打印内容行的游标，编码器逐行读取字段，不关心内容来自 Map 列表还是紧凑二进制格式
+ * 同一个实例在各行之间复用，读取字段不分配对象
+ */
+public abstract class LineReader {
+    public static final int TYPE_OTHER = -1;
+    public static final int TYPE_TEXT = 0;
+    public static final int TYPE_BARCODE = 1;
+    public static final int TYPE_QRCODE = 2;
+    public static final int TYPE_IMAGE = 3;
+
+    /**
+     * 移动到下一行，没有更多行时返回 false
+     */
+    public abstract boolean next();
+
+    /**
+     * 回到第一行之前
+     */
+    public abstract void rewind();
+
+    /**
+     * 原始数据（Map 列表或 byte[]），用于计算缓存键
+     */
+    public abstract Object source();
+
+    public abstract int type();
+
+    public abstract int align();
+
+    public abstract int size();
+
+    public abstract int weight();
+
+    public abstract int width();
+
+    public abstract int height();
+
+    public abstract int underline();
+
+    public abstract int linefeed();
+
+    public abstract int absolutePos();
+
+    public abstract int relativePos();
+
+    public abstract int fontZoom();
+
+    public abstract int x();
+
+    public abstract int y();
+
+    public abstract int stream();
+
+    public abstract String content();
+
+    /**
+     * 字段名：标签中为计数器（@1）或批量数据记录中的字段，没有时为 null
+     */
+    public abstract String name();
+
+    /**
+     * 写入文本内容
+     */
+    public void addText(EscCommandBuffer esc, CodePage codePage) {
+        esc.addText(content(), codePage);
+    }
+
+    /**
+     * 写入 QRCode 数据
+     */
+    public void addQRCodeData(EscCommandBuffer esc) {
+        esc.addStoreQRCodeData(content());
+    }
+
+    /**
+     * 按数据类型创建游标：List 为 Map 格式，byte[] 为紧凑二进制格式，其它返回 null
+     *
+     * @throws IllegalArgumentException 二进制格式头部不正确
+     */
+    @SuppressWarnings("unchecked")
+    public static LineReader of(Object data) {
+        if (data instanceof byte[]) {
+            return new PackedLineReader((byte[]) data);
+        }
+        if (data instanceof List) {
+            return new MapLineReader((List<Map<String, Object>>) data);
+        }
+        return null;
+    }
+
+    static int typeOf(String type) {
+        if ("text".equals(type)) {
+            return TYPE_TEXT;
+        } else if ("barcode".equals(type)) {
+            return TYPE_BARCODE;
+        } else if ("qrcode".equals(type)) {
+            return TYPE_QRCODE;
+        } else if ("image".equals(type)) {
+            return TYPE_IMAGE;
+        }
+        return TYPE_OTHER;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.bluetooth_print;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Map 格式的内容行：{type, content, size, align, weight, width, height, absolutePos, relativePos, fontZoom, underline, linefeed, x, y, stream, name}
+ */
+public class MapLineReader extends LineReader {
+    private final List<Map<String, Object>> list;
+
+    private int index = -1;
+
+    private Map<String, Object> line;
+
+    public MapLineReader(List<Map<String, Object>> list) {
+        this.list = list;
+    }
+
+    @Override
+    public boolean next() {
+        if (index + 1 >= list.size()) {
+            line = null;
+            return false;
+        }
+        line = list.get(++index);
+        return true;
+    }
+
+    @Override
+    public void rewind() {
+        index = -1;
+        line = null;
+    }
+
+    @Override
+    public Object source() {
+        return list;
+    }
+
+    private int getInt(String key, int defaultValue) {
+        Object value = line.get(key);
+        return value == null ? defaultValue : (int) value;
+    }
+
+    @Override
+    public int type() {
+        return typeOf((String) line.get("type"));
+    }
+
+    @Override
+    public int align() {
+        return getInt("align", 0);
+    }
+
+    @Override
+    public int size() {
+        return getInt("size", 3);
+    }
+
+    @Override
+    public int weight() {
+        return getInt("weight", 0);
+    }
+
+    @Override
+    public int width() {
+        return getInt("width", 0);
+    }
+
+    @Override
+    public int height() {
+        return getInt("height", 0);
+    }
+
+    @Override
+    public int underline() {
+        return getInt("underline", 0);
+    }
+
+    @Override
+    public int linefeed() {
+        return getInt("linefeed", 0);
+    }
+
+    @Override
+    public int absolutePos() {
+        return getInt("absolutePos", 0);
+    }
+
+    @Override
+    public int relativePos() {
+        return getInt("relativePos", 0);
+    }
+
+    @Override
+    public int fontZoom() {
+        return getInt("fontZoom", 1);
+    }
+
+    @Override
+    public int x() {
+        return getInt("x", 0);
+    }
+
+    @Override
+    public int y() {
+        return getInt("y", 0);
+    }
+
+    @Override
+    public int stream() {
+        return getInt("stream", 0);
+    }
+
+    @Override
+    public String content() {
+        return (String) line.get("content");
+    }
+
+    @Override
+    public String name() {
+        return (String) line.get("name");
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.bluetooth_print;
+
+import java.nio.charset.Charset;
+
+/**
+ * 紧凑二进制格式的内容行，由 Dart 端一次编码为 Uint8List，在平台通道上以 byte[] 传递
+ * 格式（大端）：头部 'B' 'P' 版本 保留，之后逐行：
+ * type(1) flags(1) align(1) size(1) fontZoom(1) 字段名长度(1) absolutePos(2) relativePos(2) width(2) x(2) y(2) 内容长度(4) UTF-8 内容 UTF-8 字段名
+ * type：0 文本、1 条码、2 二维码、3 图片、0xFF 其它；flags：bit0 weight、bit1 height、bit2 underline、bit3 linefeed、bit4 stream
+ * size 为 0xFF 时取默认值 3；内容长度为 0xFFFFFFFF 时内容为 null
+ * 字段直接从数组中读取，只有需要 String 的内容（非 ASCII 文本、条码、图片）才解码
+ */
+public class PackedLineReader extends LineReader {
+    public static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 4;
+
+    private static final int LINE_HEADER_LENGTH = 20;
+
+    private static final int FLAG_WEIGHT = 1;
+    private static final int FLAG_HEIGHT = 1 << 1;
+    private static final int FLAG_UNDERLINE = 1 << 2;
+    private static final int FLAG_LINEFEED = 1 << 3;
+    private static final int FLAG_STREAM = 1 << 4;
+
+    private static final int NULL_CONTENT = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] data;
+
+    /**
+     * 当前行起始位置
+     */
+    private int line = -1;
+
+    /**
+     * 下一行起始位置
+     */
+    private int position = HEADER_LENGTH;
+
+    private int contentLength;
+
+    private int nameLength;
+
+    /**
+     * @throws IllegalArgumentException 头部不正确或版本不支持
+     */
+    public PackedLineReader(byte[] data) {
+        if (data.length < HEADER_LENGTH || data[0] != 'B' || data[1] != 'P' || data[2] != VERSION) {
+            throw new IllegalArgumentException("unsupported packed lines");
+        }
+        this.data = data;
+    }
+
+    /**
+     * @throws IllegalArgumentException 行数据被截断
+     */
+    @Override
+    public boolean next() {
+        if (position >= data.length) {
+            line = -1;
+            return false;
+        }
+        if (position + LINE_HEADER_LENGTH > data.length) {
+            throw new IllegalArgumentException("truncated packed line at " + position);
+        }
+        line = position;
+        contentLength = readInt(line + 16);
+        nameLength = data[line + 5] & 0xFF;
+        int length = contentLength == NULL_CONTENT ? 0 : contentLength;
+        if (length < 0 || length > data.length - line - LINE_HEADER_LENGTH - nameLength) {
+            throw new IllegalArgumentException("truncated packed line at " + position);
+        }
+        position = line + LINE_HEADER_LENGTH + length + nameLength;
+        return true;
+    }
+
+    @Override
+    public void rewind() {
+        line = -1;
+        position = HEADER_LENGTH;
+    }
+
+    @Override
+    public Object source() {
+        return data;
+    }
+
+    private int readUnsignedShort(int offset) {
+        return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    }
+
+    private int readInt(int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    private int flag(int flag) {
+        return (data[line + 1] & flag) != 0 ? 1 : 0;
+    }
+
+    @Override
+    public int type() {
+        int type = data[line] & 0xFF;
+        return type <= TYPE_IMAGE ? type : TYPE_OTHER;
+    }
+
+    @Override
+    public int align() {
+        return data[line + 2] & 0xFF;
+    }
+
+    @Override
+    public int size() {
+        int size = data[line + 3] & 0xFF;
+        return size == 0xFF ? 3 : size;
+    }
+
+    @Override
+    public int weight() {
+        return flag(FLAG_WEIGHT);
+    }
+
+    @Override
+    public int width() {
+        return readUnsignedShort(line + 10);
+    }
+
+    @Override
+    public int height() {
+        return flag(FLAG_HEIGHT);
+    }
+
+    @Override
+    public int underline() {
+        return flag(FLAG_UNDERLINE);
+    }
+
+    @Override
+    public int linefeed() {
+        return flag(FLAG_LINEFEED);
+    }
+
+    @Override
+    public int absolutePos() {
+        return (short) readUnsignedShort(line + 6);
+    }
+
+    @Override
+    public int relativePos() {
+        return (short) readUnsignedShort(line + 8);
+    }
+
+    @Override
+    public int fontZoom() {
+        return data[line + 4] & 0xFF;
+    }
+
+    @Override
+    public int x() {
+        return readUnsignedShort(line + 12);
+    }
+
+    @Override
+    public int y() {
+        return readUnsignedShort(line + 14);
+    }
+
+    @Override
+    public int stream() {
+        return flag(FLAG_STREAM);
+    }
+
+    @Override
+    public String content() {
+        if (contentLength == NULL_CONTENT) {
+            return null;
+        }
+        return new String(data, line + LINE_HEADER_LENGTH, contentLength, UTF_8);
+    }
+
+    @Override
+    public String name() {
+        if (nameLength == 0) {
+            return null;
+        }
+        int offset = line + LINE_HEADER_LENGTH + (contentLength == NULL_CONTENT ? 0 : contentLength);
+        return new String(data, offset, nameLength, UTF_8);
+    }
+
+    /**
+     * ASCII 文本的 UTF-8 与各代码页编码相同，直接复制字节
+     */
+    @Override
+    public void addText(EscCommandBuffer esc, CodePage codePage) {
+        if (isAscii()) {
+            esc.addArray(data, line + LINE_HEADER_LENGTH, contentLength);
+        } else {
+            super.addText(esc, codePage);
+        }
+    }
+
+    /**
+     * QRCode 数据本身就是 UTF-8，直接复制字节
+     */
+    @Override
+    public void addQRCodeData(EscCommandBuffer esc) {
+        if (contentLength == NULL_CONTENT) {
+            super.addQRCodeData(esc);
+        } else {
+            esc.addStoreQRCodeData(data, line + LINE_HEADER_LENGTH, contentLength);
+        }
+    }
+
+    private boolean isAscii() {
+        if (contentLength == NULL_CONTENT) {
+            return false;
+        }
+        int start = line + LINE_HEADER_LENGTH;
+        for (int i = start, end = start + contentLength; i < end; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -2,15 +2,17 @@ package com.example.bluetooth_print;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
 import android.util.Base64;
 import android.util.Log;
-import com.gprinter.command.CpclCommand;
 import com.gprinter.command.EscCommand;
 import com.gprinter.command.LabelCommand;
 
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
 
 /**
  * @author thon
@@ -18,96 +20,311 @@ import java.util.Vector;
 public class PrintContent {
       private static final String TAG = PrintContent.class.getSimpleName();
 
+      /**
+       * 流式图片每段输出的点行数
+       */
+      private static final int STREAM_BAND_DOTS = 128;
+
+      /**
+       * 图片内连续空白行达到该点行数时分段，空白部分走纸或跳过，不再逐行发送
+       */
+      private static final int RASTER_MIN_GAP = 8;
+
+      /**
+       * 按打印机指令类型编码打印任务，相同内容直接复用已编码的指令
+       * config 中 cache 为 false 时跳过缓存
+       */
+      public static byte[] encode(PrinterCommand printerCommand, Map<String,Object> config, List<Map<String,Object>> list) {
+            return encode(printerCommand, config, new MapLineReader(list));
+      }
+
+      /**
+       * 按打印机指令类型编码打印任务，内容行为 Map 格式或紧凑二进制格式
+       */
+      public static byte[] encode(PrinterCommand printerCommand, Map<String,Object> config, LineReader lines) {
+            boolean useCache = config == null || !Boolean.FALSE.equals(config.get("cache"));
+            EncodedJobCache cache = EncodedJobCache.getInstance();
+            String key = null;
+            if (useCache) {
+                  key = EncodedJobCache.keyOf(printerCommand, config, lines.source());
+                  byte[] cached = cache.get(key);
+                  if (cached != null) {
+                        return cached;
+                  }
+            }
+
+            byte[] command;
+            if (printerCommand == PrinterCommand.ESC) {
+                  command = mapToReceipt(config, lines);
+            } else if (printerCommand == PrinterCommand.TSC) {
+                  command = mapToLabel(config, lines);
+            } else {
+                  command = mapToCPCL(config, lines);
+            }
+
+            if (useCache) {
+                  cache.put(key, command);
+            }
+            return command;
+      }
+
+      /**
+       * 按打印机指令类型创建指令缓冲区
+       */
+      static CommandBuffer newCommandBuffer(PrinterCommand printerCommand) {
+            if (printerCommand == PrinterCommand.ESC) {
+                  return new EscCommandBuffer();
+            } else if (printerCommand == PrinterCommand.TSC) {
+                  return new TscCommandBuffer();
+            }
+            return new CpclCommandBuffer();
+      }
+
+      /**
+       * 按打印机指令类型写入任务开始部分
+       */
+      static void addHeader(PrinterCommand printerCommand, CommandBuffer buffer, Map<String,Object> config) {
+            if (printerCommand == PrinterCommand.ESC) {
+                  addReceiptHeader((EscCommandBuffer) buffer);
+            } else if (printerCommand == PrinterCommand.TSC) {
+                  addLabelHeader((TscCommandBuffer) buffer, config);
+            } else {
+                  addCpclHeader((CpclCommandBuffer) buffer, config);
+            }
+      }
+
+      /**
+       * 按打印机指令类型写入内容行
+       */
+      static void addLines(PrinterCommand printerCommand, CommandBuffer buffer, Map<String,Object> config, List<Map<String,Object>> list) {
+            LineReader lines = new MapLineReader(list);
+            if (printerCommand == PrinterCommand.ESC) {
+                  addReceiptLines((EscCommandBuffer) buffer, config, lines);
+            } else if (printerCommand == PrinterCommand.TSC) {
+                  addLabelLines((TscCommandBuffer) buffer, config, lines, null);
+            } else {
+                  addCpclLines((CpclCommandBuffer) buffer, config, lines);
+            }
+      }
+
+      /**
+       * 按打印机指令类型写入任务结束部分
+       */
+      static void addFooter(PrinterCommand printerCommand, CommandBuffer buffer, Map<String,Object> config) {
+            if (printerCommand == PrinterCommand.ESC) {
+                  addReceiptFooter((EscCommandBuffer) buffer);
+            } else if (printerCommand == PrinterCommand.TSC) {
+                  addLabelFooter((TscCommandBuffer) buffer, config);
+            } else {
+                  addCpclFooter((CpclCommandBuffer) buffer, config);
+            }
+      }
+
+      /**
+       * 是否包含分段流式打印的图片行（stream: 1）
+       */
+      public static boolean hasStreamedImage(LineReader lines) {
+            try {
+                  while (lines.next()) {
+                        if (lines.type() == LineReader.TYPE_IMAGE && lines.stream() == 1) {
+                              return true;
+                        }
+                  }
+                  return false;
+            } finally {
+                  lines.rewind();
+            }
+      }
+
+      /**
+       * 边编码边写出：流式图片每解码、光栅化一个水平分段就写出一次，峰值内存只与分段大小有关
+       * 仅票据（ESC）支持分段，其它指令整体编码后写出
+       */
+      public static void stream(PrinterCommand printerCommand, Map<String,Object> config, LineReader lines, CommandBuffer.Output output) {
+            if (printerCommand != PrinterCommand.ESC) {
+                  byte[] command = encode(printerCommand, config, lines);
+                  output.write(command, 0, command.length);
+                  return;
+            }
+
+            EscCommandBuffer esc = new EscCommandBuffer();
+            esc.setOutput(output);
+            addReceiptHeader(esc);
+            addReceiptLines(esc, config, lines);
+            addReceiptFooter(esc);
+            esc.flush();
+      }
+
       /**
        * 票据打印对象转换
        */
-      public static Vector<Byte> mapToReceipt(Map<String,Object> config, List<Map<String,Object>> list) {
-            EscCommand esc = new EscCommand();
+      public static byte[] mapToReceipt(Map<String,Object> config, List<Map<String,Object>> list) {
+            return mapToReceipt(config, new MapLineReader(list));
+      }
+
+      static byte[] mapToReceipt(Map<String,Object> config, LineReader lines) {
+            EscCommandBuffer esc = new EscCommandBuffer();
+            addReceiptHeader(esc);
+            addReceiptLines(esc, config, lines);
+            addReceiptFooter(esc);
+            return esc.getCommand();
+      }
+
+      /**
+       * 票据开始：初始化打印机并走纸
+       */
+      static void addReceiptHeader(EscCommandBuffer esc) {
             //初始化打印机
             esc.addInitializePrinter();
             //打印走纸多少个单位
             esc.addPrintAndFeedLines((byte) 1);
+      }
 
+      /**
+       * 票据内容行
+       * 记录已发送的对齐方式、打印模式、汉字模式、条码与二维码参数，与上一行相同时不再重复发送；
+       * 相同样式的相邻文本之间因此不再夹带指令，直接连成一段。开始时各项视为未知，结束时恢复默认打印模式
+       * 记录的状态只在打印机不被其它任务重置时成立：打印任务不会插入执行（见 {@link PrinterJobQueue}）；
+       * 流式图片边编码边写出，写出时会插入执行控制指令，之后各项重新视为未知
+       */
+      static void addReceiptLines(EscCommandBuffer esc, Map<String,Object> config, LineReader lines) {
             // {type:'text|barcode|qrcode|image', content:'', size:4, align: 0|1|2, weight: 0|1, width:0|1, height:0|1, underline:0|1, linefeed: 0|1}
-            for (Map<String,Object> m: list) {
-                  String type = (String)m.get("type");
-                  String content = (String)m.get("content");
-                  int align = (int)(m.get("align")==null?0:m.get("align"));
-                  int size = (int)(m.get("size")==null?3:m.get("size"));
-                  int weight = (int)(m.get("weight")==null?0:m.get("weight"));
-                  int width = (int)(m.get("width")==null?0:m.get("width"));
-                  int height = (int)(m.get("height")==null?0:m.get("height"));
-                  int underline = (int)(m.get("underline")==null?0:m.get("underline"));
-                  int linefeed = (int)(m.get("linefeed")==null?0:m.get("linefeed"));
-
-                  EscCommand.ENABLE emphasized = weight==0?EscCommand.ENABLE.OFF:EscCommand.ENABLE.ON;
-                  EscCommand.ENABLE doublewidth = width==0?EscCommand.ENABLE.OFF:EscCommand.ENABLE.ON;
-                  EscCommand.ENABLE doubleheight = height==0?EscCommand.ENABLE.OFF:EscCommand.ENABLE.ON;
-                  EscCommand.ENABLE isUnderline = underline==0?EscCommand.ENABLE.OFF:EscCommand.ENABLE.ON;
+            ImageProcessor.Dither dither = ditherOf(config);
+            CodePage codePage = codePageOf(config);
+            int currentAlign = -1;
+            int currentMode = -1;
+            int currentKanji = -1;
+            int currentQRSize = -1;
+            boolean barcodeReady = false;
+            boolean qrLevelReady = false;
+            // 当前位置是否在行首：换行、条码、二维码与图片打印后回到行首，此时绝对位置 0 无需再设置
+            boolean lineStart = false;
+            while (lines.next()) {
+                  int type = lines.type();
+                  int align = lines.align();
+                  int size = lines.size();
+                  int weight = lines.weight();
+                  int width = lines.width();
+                  int height = lines.height();
+                  int underline = lines.underline();
+                  int linefeed = lines.linefeed();
 
                   // 设置打印位置
-                  esc.addSelectJustification(align==0?EscCommand.JUSTIFICATION.LEFT:(align==1?EscCommand.JUSTIFICATION.CENTER:EscCommand.JUSTIFICATION.RIGHT));
+                  align = align==0?0:(align==1?1:2);
+                  if(align != currentAlign){
+                        esc.addSelectJustification(align==0?EscCommand.JUSTIFICATION.LEFT:(align==1?EscCommand.JUSTIFICATION.CENTER:EscCommand.JUSTIFICATION.RIGHT));
+                        currentAlign = align;
+                  }
+
+                  if(type != LineReader.TYPE_TEXT && currentMode > 0){
+                        // 取消倍高倍宽，条码、二维码与图片按默认打印模式输出
+                        esc.addSelectPrintModes(EscCommand.FONT.FONTA, EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF);
+                        currentMode = 0;
+                  }
 
-                  if("text".equals(type)){
-                        int absolutePos = (int)(m.get("absolutePos")==null?0:m.get("absolutePos"));
-                        int relativePos = (int)(m.get("relativePos")==null?0:m.get("relativePos"));
-                        int fontZoom = (int)(m.get("fontZoom")==null?1:m.get("fontZoom"));
-                        short aPos = (short)absolutePos;
-                        short rPos = (short)relativePos;
-                        Log.e(TAG,"******************* absolutePos: " + aPos +", relativePos: " + rPos +", fontZoom: " + fontZoom);
+                  if(type == LineReader.TYPE_TEXT){
+                        int fontZoom = lines.fontZoom();
+                        short aPos = (short)lines.absolutePos();
+                        short rPos = (short)lines.relativePos();
 
                         // 设置绝对打印位置，将当前打印位置设置到距离行首 n* hor_motion_unit 点
-                        esc.addSetAbsolutePrintPosition(aPos);
+                        if(aPos != 0 || !lineStart){
+                              esc.addSetAbsolutePrintPosition(aPos);
+                        }
                         // 设置相对打印位置，将打印位置设置到距当前位置 n 点处
-                        esc.addSetRelativePrintPositon(rPos);
+                        if(rPos != 0){
+                              esc.addSetRelativePrintPosition(rPos);
+                        }
                         // 设置为倍高倍宽
-                        esc.addSelectPrintModes(EscCommand.FONT.FONTA, emphasized, doubleheight, doublewidth, isUnderline);
-                        if(fontZoom>1){
-                              esc.addSetKanjiFontMode(EscCommand.ENABLE.ON, EscCommand.ENABLE.ON, EscCommand.ENABLE.OFF);
-                        }else{
-                              esc.addSetKanjiFontMode(EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF);
+                        int mode = (weight==0?0:0x08) | (height==0?0:0x10) | (width==0?0:0x20) | (underline==0?0:0x80);
+                        if(mode != currentMode){
+                              esc.addSelectPrintModes(EscCommand.FONT.FONTA,
+                                      weight==0?EscCommand.ENABLE.OFF:EscCommand.ENABLE.ON,
+                                      height==0?EscCommand.ENABLE.OFF:EscCommand.ENABLE.ON,
+                                      width==0?EscCommand.ENABLE.OFF:EscCommand.ENABLE.ON,
+                                      underline==0?EscCommand.ENABLE.OFF:EscCommand.ENABLE.ON);
+                              currentMode = mode;
+                        }
+                        // 单字节代码页下没有汉字，不设置汉字模式
+                        int kanji = fontZoom>1 ? 1 : 0;
+                        if(!codePage.isSingleByte() && kanji != currentKanji){
+                              if(kanji == 1){
+                                    esc.addSetKanjiFontMode(EscCommand.ENABLE.ON, EscCommand.ENABLE.ON, EscCommand.ENABLE.OFF);
+                              }else{
+                                    esc.addSetKanjiFontMode(EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF);
+                              }
+                              currentKanji = kanji;
+                        }
+                        lines.addText(esc, codePage);
+                        lineStart = false;
+                  }else if(type == LineReader.TYPE_BARCODE){
+                        if(!barcodeReady){
+                              esc.addSelectPrintingPositionForHRICharacters(EscCommand.HRI_POSITION.BELOW);
+                              // 设置条码可识别字符位置在条码下方
+                              // 设置条码高度为60点
+                              esc.addSetBarcodeHeight((byte) 60);
+                              // 设置条码宽窄比为2
+                              esc.addSetBarcodeWidth((byte) 2);
+                              barcodeReady = true;
                         }
-                        esc.addText(content);
-                        // 取消倍高倍宽
-                        esc.addSelectPrintModes(EscCommand.FONT.FONTA, EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF);
-                  }else if("barcode".equals(type)){
-                        esc.addSelectPrintingPositionForHRICharacters(EscCommand.HRI_POSITION.BELOW);
-                        // 设置条码可识别字符位置在条码下方
-                        // 设置条码高度为60点
-                        esc.addSetBarcodeHeight((byte) 60);
-                        // 设置条码宽窄比为2
-                        esc.addSetBarcodeWidth((byte) 2);
                         // 打印Code128码
-                        esc.addCODE128(esc.genCodeB(content));
-                  }else if("qrcode".equals(type)){
-                        // 设置纠错等级
-                        esc.addSelectErrorCorrectionLevelForQRCode((byte) 0x31);
-                        // 设置qrcode模块大小
-                        esc.addSelectSizeOfModuleForQRCode((byte) size);
+                        esc.addCODE128(esc.genCodeB(lines.content()));
+                        lineStart = true;
+                  }else if(type == LineReader.TYPE_QRCODE){
+                        if(!qrLevelReady){
+                              // 设置纠错等级
+                              esc.addSelectErrorCorrectionLevelForQRCode((byte) 0x31);
+                              qrLevelReady = true;
+                        }
+                        if(size != currentQRSize){
+                              // 设置qrcode模块大小
+                              esc.addSelectSizeOfModuleForQRCode((byte) size);
+                              currentQRSize = size;
+                        }
                         // 设置qrcode内容
-                        esc.addStoreQRCodeData(content);
+                        lines.addQRCodeData(esc);
                         // 打印QRCode
                         esc.addPrintQRCode();
-                  }else if("image".equals(type)){
-                        byte[] bytes = Base64.decode(content, Base64.DEFAULT);
-                        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-
-                        if(bitmap.getHeight() > bitmap.getWidth()){
-                              // Crop the image to maintain the aspect ratio and fit within the maximum height
-                              int startY = (bitmap.getHeight() - bitmap.getWidth()) / 2;
-                              bitmap = Bitmap.createBitmap(bitmap, 0, startY, bitmap.getWidth(), bitmap.getWidth());
+                        lineStart = true;
+                  }else if(type == LineReader.TYPE_IMAGE){
+                        String name = lines.name();
+                        if(PrinterAssets.isResident(PrinterCommand.ESC, config, name)){
+                              // 已下载为 NV 图形，只发送引用
+                              String slot = PrinterAssets.slotOf(PrinterCommand.ESC, config, name);
+                              esc.addPrintNvGraphics(slot.charAt(0), slot.charAt(1));
+                        }else if(lines.stream() == 1){
+                              addStreamedImage(esc, lines.content(), width, dither);
+                              // 写出期间可能插入执行了其它任务，不再信任已记录的状态
+                              currentAlign = -1;
+                              currentMode = -1;
+                              currentKanji = -1;
+                              currentQRSize = -1;
+                              barcodeReady = false;
+                              qrLevelReady = false;
+                        }else{
+                              addReceiptImage(esc, lines.content(), width, align, dither);
                         }
-                        
-                        esc.addRastBitImage(bitmap, width, 0);
+                        lineStart = true;
                   }
 
                   if(linefeed == 1){
                         //打印并换行
                         esc.addPrintAndLineFeed();
+                        lineStart = true;
                   }
 
             }
 
+            // 取消倍高倍宽
+            if(currentMode > 0){
+                  esc.addSelectPrintModes(EscCommand.FONT.FONTA, EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF, EscCommand.ENABLE.OFF);
+            }
+      }
+
+      /**
+       * 票据结束：走纸、切纸并查询缓冲区打印完成
+       */
+      static void addReceiptFooter(EscCommandBuffer esc) {
             //打印走纸n个单位
             esc.addPrintAndFeedLines((byte) 1);
 
@@ -119,16 +336,81 @@ public class PrintContent {
             byte [] bytes={0x1D,0x72,0x01};
             //添加用户指令
             esc.addUserCommand(bytes);
-
-            return esc.getCommand();
       }
 
+      /**
+       * 批量标签数据在打印机内存中的程序名
+       */
+      private static final String LABEL_PROGRAM = "BPLABEL.BAS";
+
       /**
        * 标签打印对象转换
+       * config 中 sets、copies 对应 PRINT m,n：打印 sets 张（计数器每张递增），每张 copies 份；
+       * counters 为计数器列表 [{start, step}]，内容行的 name 为 @1、@2… 时引用计数器；
+       * records 为批量数据 [{name: value}]，标签主体只下载一次，每条记录只发送 name 对应的字段值
        */
-      public static Vector<Byte> mapToLabel(Map<String,Object> config, List<Map<String,Object>> list) {
-            LabelCommand tsc = new LabelCommand();
+      public static byte[] mapToLabel(Map<String,Object> config, List<Map<String,Object>> list) {
+            return mapToLabel(config, new MapLineReader(list));
+      }
+
+      @SuppressWarnings("unchecked")
+      static byte[] mapToLabel(Map<String,Object> config, LineReader lines) {
+            TscCommandBuffer tsc = new TscCommandBuffer();
+            addLabelHeader(tsc, config);
+            Object records = config.get("records");
+            if (records instanceof List) {
+                  addLabelRecords(tsc, config, lines, (List<Map<String,Object>>) records);
+            } else {
+                  addLabelLines(tsc, config, lines, null);
+                  addLabelFooter(tsc, config);
+            }
+            // 发送数据
+            return tsc.getCommand();
+      }
+
+      /**
+       * 批量数据标签：带字段名的内容行改为引用字符串变量 V1$、V2$…，标签主体作为程序下载到打印机内存，
+       * 之后每条记录只发送变量赋值和 RUN，不再重复发送固定内容与图片
+       */
+      private static void addLabelRecords(TscCommandBuffer tsc, Map<String,Object> config, LineReader lines, List<Map<String,Object>> records) {
+            Map<String,String> variables = new LinkedHashMap<>();
+            while (lines.next()) {
+                  String name = lines.name();
+                  if (name != null && !name.startsWith("@") && !variables.containsKey(name)) {
+                        variables.put(name, "V" + (variables.size() + 1) + "$");
+                  }
+            }
+            lines.rewind();
+
+            tsc.addDownload(LABEL_PROGRAM);
+            tsc.addCls();
+            addLabelLines(tsc, config, lines, variables);
+            tsc.addPrint(labelSets(config), labelCopies(config));
+            tsc.addEop();
+
+            for (Map<String,Object> record : records) {
+                  for (Map.Entry<String,String> variable : variables.entrySet()) {
+                        Object value = record == null ? null : record.get(variable.getKey());
+                        tsc.addVariable(variable.getValue(), value == null ? "" : value.toString());
+                  }
+                  tsc.addRun(LABEL_PROGRAM);
+            }
+            tsc.addKill(LABEL_PROGRAM);
+            addLabelFinish(tsc);
+      }
+
+      private static int labelSets(Map<String,Object> config) {
+            return (int)(config.get("sets")==null?1:config.get("sets"));
+      }
+
+      private static int labelCopies(Map<String,Object> config) {
+            return (int)(config.get("copies")==null?1:config.get("copies"));
+      }
 
+      /**
+       * 标签开始：尺寸、间隙、方向等设置并清除缓冲区
+       */
+      static void addLabelHeader(TscCommandBuffer tsc, Map<String,Object> config) {
             int width = (int)(config.get("width")==null?60:config.get("width")); // 单位：mm
             int height = (int)(config.get("height")==null?75:config.get("height")); // 单位：mm
             int gap = (int)(config.get("gap")==null?0:config.get("gap")); // 单位：mm
@@ -150,50 +432,350 @@ public class PrintContent {
             // 清除打印缓冲区
             tsc.addCls();
 
-            // {type:'text|barcode|qrcode|image', content:'', x:0,y:0}
-            for (Map<String,Object> m: list) {
-                  String type = (String)m.get("type");
-                  String content = (String)m.get("content");
-                  int x = (int)(m.get("x")==null?0:m.get("x")); //dpi: 1mm约为8个点
-                  int y = (int)(m.get("y")==null?0:m.get("y"));
+            // 流水号计数器 @1、@2…
+            Object counters = config.get("counters");
+            if (counters instanceof List) {
+                  int index = 1;
+                  for (Object counter : (List<?>) counters) {
+                        Map<?,?> m = (Map<?,?>) counter;
+                        Object start = m.get("start");
+                        int step = (int)(m.get("step")==null?1:m.get("step"));
+                        tsc.addCounter(index++, step, start == null ? "1" : start.toString());
+                  }
+            }
+      }
+
+      /**
+       * 标签内容元素，name 为 @n 的行引用计数器，在 variables 中的行引用对应的字符串变量
+       */
+      static void addLabelLines(TscCommandBuffer tsc, Map<String,Object> config, LineReader lines, Map<String,String> variables) {
+            // {type:'text|barcode|qrcode|image', content:'', x:0,y:0, name:'@1'}
+            ImageProcessor.Dither dither = ditherOf(config);
+            while (lines.next()) {
+                  int type = lines.type();
+                  String content = lines.content();
+                  int x = lines.x(); //dpi: 1mm约为8个点
+                  int y = lines.y();
+                  String name = lines.name();
+                  String variable = name == null ? null
+                          : name.startsWith("@") ? name
+                          : variables != null ? variables.get(name) : null;
 
-                  if("text".equals(type)){
+                  if(type == LineReader.TYPE_TEXT){
                         // 绘制简体中文
-                        tsc.addText(x, y, LabelCommand.FONTTYPE.SIMPLIFIED_CHINESE, LabelCommand.ROTATION.ROTATION_0, LabelCommand.FONTMUL.MUL_1, LabelCommand.FONTMUL.MUL_1, content);
+                        tsc.addText(x, y, LabelCommand.FONTTYPE.SIMPLIFIED_CHINESE, LabelCommand.ROTATION.ROTATION_0, LabelCommand.FONTMUL.MUL_1, LabelCommand.FONTMUL.MUL_1, content, variable);
                         //打印繁体
                         //tsc.addUnicodeText(10,32, LabelCommand.FONTTYPE.TRADITIONAL_CHINESE, LabelCommand.ROTATION.ROTATION_0, LabelCommand.FONTMUL.MUL_1, LabelCommand.FONTMUL.MUL_1,"BIG5碼繁體中文字元","BIG5");
                         //打印韩文
                         //tsc.addUnicodeText(10,60, LabelCommand.FONTTYPE.KOREAN, LabelCommand.ROTATION.ROTATION_0, LabelCommand.FONTMUL.MUL_1, LabelCommand.FONTMUL.MUL_1,"Korean 지아보 하성","EUC_KR");
-                  }else if("barcode".equals(type)){
-                        tsc.add1DBarcode(x, y, LabelCommand.BARCODETYPE.CODE128, 100, LabelCommand.READABEL.EANBEL, LabelCommand.ROTATION.ROTATION_0, content);
-                  }else if("qrcode".equals(type)){
-                        tsc.addQRCode(x,y, LabelCommand.EEC.LEVEL_L, 5, LabelCommand.ROTATION.ROTATION_0, content);
-                  }else if("image".equals(type)){
-                        byte[] bytes = Base64.decode(content, Base64.DEFAULT);
-                        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                        tsc.addBitmap(x, y, LabelCommand.BITMAP_MODE.OVERWRITE, 300, bitmap);
+                  }else if(type == LineReader.TYPE_BARCODE){
+                        tsc.add1DBarcode(x, y, LabelCommand.BARCODETYPE.CODE128, 100, LabelCommand.READABEL.EANBEL, LabelCommand.ROTATION.ROTATION_0, content, variable);
+                  }else if(type == LineReader.TYPE_QRCODE){
+                        tsc.addQRCode(x,y, LabelCommand.EEC.LEVEL_L, 5, LabelCommand.ROTATION.ROTATION_0, content, variable);
+                  }else if(type == LineReader.TYPE_IMAGE){
+                        if(PrinterAssets.isResident(PrinterCommand.TSC, config, name)){
+                              // 已下载为 BMP 文件，只发送引用
+                              tsc.addPutBmp(x, y, PrinterAssets.slotOf(PrinterCommand.TSC, config, name));
+                        }else{
+                              addLabelImage(tsc, x, y, content, dither);
+                        }
                   }
             }
+      }
+
+      /**
+       * 票据文本代码页 config.codepage：gbk（默认）、cp437、cp850、cp860、cp1252
+       */
+      static CodePage codePageOf(Map<String,Object> config) {
+            CodePage codePage = CodePage.parse(config == null ? null : config.get("codepage"));
+            return codePage == null ? CodePage.GBK : codePage;
+      }
+
+      /**
+       * 图片二值化方式 config.dither：ordered（默认）、threshold、diffusion
+       */
+      static ImageProcessor.Dither ditherOf(Map<String,Object> config) {
+            return ImageProcessor.parseDither(config == null ? null : config.get("dither"));
+      }
+
+      /**
+       * 票据图片：去掉上下空白行与左右空白字节列，图片内连续空白行改为 ESC J 走纸，其余部分分段发送 GS v 0
+       * GS v 0 的水平位置由对齐方式决定，各段使用相同的左右边界：左对齐只去右边，右对齐只去左边，居中两边去掉相同宽度
+       * ESC J 按纵向移动单位走纸，203dpi 打印机默认为 1 点行
+       */
+      private static void addReceiptImage(EscCommandBuffer esc, String content, int width, int align, ImageProcessor.Dither dither) {
+            if (width <= 0) {
+                  return;
+            }
+            byte[] bits = receiptBits(content, width, dither);
+            if (bits == null || bits.length == 0) {
+                  return;
+            }
+            int widthBytes = (width + 7) / 8;
+            List<RasterBand> bands = RasterBand.split(bits, widthBytes, RASTER_MIN_GAP);
+            int left = widthBytes;
+            int right = 0;
+            for (RasterBand band : bands) {
+                  left = Math.min(left, band.left);
+                  right = Math.max(right, band.right);
+            }
+            if (align == 0) {
+                  left = 0;
+            } else if (align == 1) {
+                  int margin = Math.min(left, widthBytes - right);
+                  left = margin;
+                  right = widthBytes - margin;
+            } else {
+                  right = widthBytes;
+            }
+
+            int row = 0;
+            for (RasterBand band : bands) {
+                  esc.addPrintAndFeedDots(band.top - row);
+                  esc.addRastBitImage(bits, widthBytes, left, right, band.top, band.rows);
+                  row = band.top + band.rows;
+            }
+            esc.addPrintAndFeedDots(bits.length / widthBytes - row);
+      }
+
+      /**
+       * 票据图片点阵（裁剪为正方形后缩放，宽度按 8 点对齐，1 为黑点），命中光栅缓存时跳过解码与二值化
+       */
+      static byte[] receiptBits(String content, int width, ImageProcessor.Dither dither) {
+            RasterCache cache = RasterCache.getInstance();
+            String key = RasterCache.keyOf(PrinterCommand.ESC, content, width, dither.ordinal());
+            byte[] raster = cache.get(key);
+            if (raster != null) {
+                  return raster;
+            }
+
+            byte[] bytes = Base64.decode(content, Base64.DEFAULT);
+            Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+            if (bitmap == null) {
+                  return null;
+            }
+
+            if(bitmap.getHeight() > bitmap.getWidth()){
+                  // Crop the image to maintain the aspect ratio and fit within the maximum height
+                  int startY = (bitmap.getHeight() - bitmap.getWidth()) / 2;
+                  bitmap = Bitmap.createBitmap(bitmap, 0, startY, bitmap.getWidth(), bitmap.getWidth());
+            }
+
+            raster = ImageProcessor.toBits(bitmap, width, dither);
+            cache.put(key, raster);
+            return raster;
+      }
+
+      /**
+       * 长图分段光栅化：BitmapRegionDecoder 按水平分段解码，每段单独生成 GS v 0 并写出
+       * 与普通图片不同，不裁剪为正方形
+       */
+      private static void addStreamedImage(EscCommandBuffer esc, String content, int width, ImageProcessor.Dither dither) {
+            byte[] bytes = Base64.decode(content, Base64.DEFAULT);
+            BitmapRegionDecoder decoder;
+            try {
+                  decoder = BitmapRegionDecoder.newInstance(bytes, 0, bytes.length, false);
+            } catch (IOException e) {
+                  Log.e(TAG, "******************* stream image decode failed", e);
+                  return;
+            }
 
+            try {
+                  int sourceWidth = decoder.getWidth();
+                  int sourceHeight = decoder.getHeight();
+                  // 未指定宽度时按原图宽度打印
+                  int dotsWidth = ((width > 1 ? width : sourceWidth) + 7) / 8 * 8;
+                  // 每段源图行数，使输出约 STREAM_BAND_DOTS 点行
+                  int bandRows = Math.max(1, STREAM_BAND_DOTS * sourceWidth / dotsWidth);
+                  BitmapFactory.Options options = new BitmapFactory.Options();
+                  options.inSampleSize = 1;
+                  while (sourceWidth / (options.inSampleSize * 2) >= dotsWidth) {
+                        options.inSampleSize *= 2;
+                  }
+
+                  esc.flush();
+                  Rect region = new Rect();
+                  for (int top = 0; top < sourceHeight; top += bandRows) {
+                        region.set(0, top, sourceWidth, Math.min(top + bandRows, sourceHeight));
+                        Bitmap band = decoder.decodeRegion(region, options);
+                        if (band == null) {
+                              break;
+                        }
+                        byte[] bits = ImageProcessor.toBits(band, dotsWidth, dither);
+                        esc.addRastBitImage(bits, dotsWidth / 8, 0, dotsWidth / 8, 0, bits.length / (dotsWidth / 8));
+                        band.recycle();
+                        esc.flush();
+                  }
+            } finally {
+                  decoder.recycle();
+            }
+      }
+
+      /**
+       * 标签图片：按连续空白行分段，各段去掉左右空白字节列，按偏移后的坐标分别发送 BITMAP，空白部分不发送
+       */
+      private static void addLabelImage(TscCommandBuffer tsc, int x, int y, String content, ImageProcessor.Dither dither) {
+            int width = PrinterAssets.LABEL_IMAGE_WIDTH;
+            byte[] bits = packedImage(content, width, dither);
+            if (bits == null) {
+                  return;
+            }
+            int widthBytes = (width + 7) / 8;
+            for (RasterBand band : RasterBand.split(bits, widthBytes, RASTER_MIN_GAP)) {
+                  tsc.addBitmap(x + band.left * 8, y + band.top, LabelCommand.BITMAP_MODE.OVERWRITE,
+                          bits, widthBytes, band.left, band.right, band.top, band.rows);
+            }
+      }
+
+      /**
+       * 标签结束：打印、蜂鸣并开钱箱
+       */
+      static void addLabelFooter(TscCommandBuffer tsc, Map<String,Object> config) {
             // 打印标签
-            tsc.addPrint(1, 1);
+            tsc.addPrint(labelSets(config), labelCopies(config));
+            addLabelFinish(tsc);
+      }
+
+      private static void addLabelFinish(TscCommandBuffer tsc) {
             // 打印标签后 蜂鸣器响
             tsc.addSound(2, 100);
             //开启钱箱
             tsc.addCashdrwer(LabelCommand.FOOT.F5, 255, 255);
-            // 发送数据
-            return  tsc.getCommand();
       }
 
       /**
        * 面单打印对象转换
        */
-      public static Vector<Byte> mapToCPCL(Map<String,Object> config, List<Map<String,Object>> list) {
-            CpclCommand cpcl = new CpclCommand();
+      public static byte[] mapToCPCL(Map<String,Object> config, List<Map<String,Object>> list) {
+            return mapToCPCL(config, new MapLineReader(list));
+      }
+
+      static byte[] mapToCPCL(Map<String,Object> config, LineReader lines) {
+            CpclCommandBuffer cpcl = new CpclCommandBuffer();
+            addCpclHeader(cpcl, config);
+            addCpclLines(cpcl, config, lines);
+            addCpclFooter(cpcl, config);
+            return cpcl.getCommand();
+      }
+
+      /**
+       * 面单开始：页面高度、宽度（按 200dpi，1mm 为 8 点）
+       */
+      static void addCpclHeader(CpclCommandBuffer cpcl, Map<String,Object> config) {
+            int width = (int)(config.get("width")==null?60:config.get("width")); // 单位：mm
+            int height = (int)(config.get("height")==null?75:config.get("height")); // 单位：mm
+
+            cpcl.addInitializePrinter(height * 8, 1);
+            cpcl.addPageWidth(width * 8);
+      }
+
+      /**
+       * 面单内容元素，坐标与标签相同；字体样式只在变化时输出，结束时恢复默认，模板分段拼接时不影响后续内容
+       * 图片默认使用 CG 二进制位图，config 中 graphics 为 EG 时使用十六进制位图
+       */
+      static void addCpclLines(CpclCommandBuffer cpcl, Map<String,Object> config, LineReader lines) {
+            // {type:'text|barcode|qrcode|image', content:'', x:0, y:0, align: 0|1|2, weight: 0|1, width:0|1, height:0|1, underline:0|1, size:3}
+            boolean compressed = config == null || !"EG".equals(config.get("graphics"));
+            ImageProcessor.Dither dither = ditherOf(config);
+            int align = 0;
+            int weight = 0;
+            int mag = 0;
+            int underline = 0;
+            while (lines.next()) {
+                  int type = lines.type();
+                  if (type == LineReader.TYPE_OTHER) {
+                        continue;
+                  }
+                  int x = lines.x();
+                  int y = lines.y();
 
+                  if (lines.align() != align) {
+                        align = lines.align();
+                        cpcl.addJustification(align);
+                  }
+
+                  if(type == LineReader.TYPE_TEXT){
+                        if (lines.weight() != weight) {
+                              weight = lines.weight();
+                              cpcl.addSetBold(weight);
+                        }
+                        // 低 4 位为倍宽，高 4 位为倍高
+                        int textMag = (lines.width() != 0 ? 2 : 1) | (lines.height() != 0 ? 2 : 1) << 4;
+                        if (textMag != (mag == 0 ? 0x11 : mag)) {
+                              mag = textMag;
+                              cpcl.addSetMag(mag & 0x0F, mag >> 4);
+                        }
+                        if (lines.underline() != underline) {
+                              underline = lines.underline();
+                              cpcl.addUnderline(underline != 0);
+                        }
+                        cpcl.addText(24, 0, x, y, lines.content());
+                  }else if(type == LineReader.TYPE_BARCODE){
+                        cpcl.addBarcodeText(7, 0, 5);
+                        cpcl.addBarcode128(1, 1, 60, x, y, lines.content());
+                        cpcl.addBarcodeTextOff();
+                  }else if(type == LineReader.TYPE_QRCODE){
+                        cpcl.addQRCode(x, y, Math.max(1, Math.min(lines.size(), 32)), lines.content());
+                  }else if(type == LineReader.TYPE_IMAGE){
+                        int width = lines.width() > 1 ? lines.width() : 300;
+                        byte[] raster = packedImage(lines.content(), width, dither);
+                        if (raster != null) {
+                              // 按连续空白行分段并去掉左右空白字节列，空白部分不发送
+                              int widthBytes = (width + 7) / 8;
+                              for (RasterBand band : RasterBand.split(raster, widthBytes, RASTER_MIN_GAP)) {
+                                    cpcl.addGraphics(compressed, x + band.left * 8, y + band.top,
+                                            raster, widthBytes, band.left, band.right, band.top, band.rows);
+                              }
+                        }
+                  }
+            }
+
+            // 恢复默认样式
+            if (align != 0) {
+                  cpcl.addJustification(0);
+            }
+            if (weight != 0) {
+                  cpcl.addSetBold(0);
+            }
+            if (mag != 0 && mag != 0x11) {
+                  cpcl.addSetMag(0, 0);
+            }
+            if (underline != 0) {
+                  cpcl.addUnderline(false);
+            }
+      }
+
+      /**
+       * 面单结束：有间隙的标签纸走纸到下一张开头，然后打印
+       */
+      static void addCpclFooter(CpclCommandBuffer cpcl, Map<String,Object> config) {
+            int gap = (int)(config.get("gap")==null?0:config.get("gap"));
+            if (gap > 0) {
+                  cpcl.addForm();
+            }
+            cpcl.addPrint();
+      }
+
+      /**
+       * 位图点阵（每字节 8 点、高位在左、1 为黑点），面单位图与标签驻留图片共用，命中光栅缓存时跳过解码与二值化
+       */
+      static byte[] packedImage(String content, int width, ImageProcessor.Dither dither) {
+            RasterCache cache = RasterCache.getInstance();
+            String key = RasterCache.keyOf(PrinterCommand.CPCL, content, width, dither.ordinal());
+            byte[] raster = cache.get(key);
+            if (raster != null) {
+                  return raster;
+            }
+
+            byte[] bytes = Base64.decode(content, Base64.DEFAULT);
+            Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+            if (bitmap == null) {
+                  return null;
+            }
 
-            Vector<Byte> datas = cpcl.getCommand();
-            return datas;
+            raster = ImageProcessor.toBits(bitmap, width, dither);
+            cache.put(key, raster);
+            return raster;
       }
 
 }
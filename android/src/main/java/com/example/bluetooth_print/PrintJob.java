@@ -0,0 +1,163 @@
+package com.example.bluetooth_print;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 打印流水线中的一个任务
+ * 提交时即在编码线程池上开始编码，发送阶段在打印机任务队列中按提交顺序取用编码结果，
+ * 后一个任务的图片解码、光栅化与前一个任务的写出重叠；
+ * 流式图片任务不预先编码，在发送阶段边编码边写出，峰值内存仍只与分段大小有关；
+ * 打印机保存的代码页与驻留图片位置在编码线程（或发送阶段）读取，提交任务的主线程不读写 SharedPreferences
+ */
+public class PrintJob {
+    private final DeviceConnFactoryManager device;
+
+    /**
+     * 调用方传入的 config
+     */
+    private final Map<String, Object> requestConfig;
+
+    /**
+     * 补充了代码页与驻留图片位置的 config，{@link #prepare()} 之后可用
+     */
+    private Map<String, Object> config;
+
+    private final LineReader lines;
+
+    /**
+     * 开始编码时的指令集，发送时指令集已变化（如重连后识别为其它指令集）则重新编码
+     */
+    private final PrinterCommand printerCommand;
+
+    /**
+     * 编码结果，流式任务或提交时指令集未识别为 null
+     */
+    private final FutureTask<byte[]> encoding;
+
+    /**
+     * 按提交时指令集引用的驻留图片，发送前确认已下载到打印机；{@link #prepare()} 之后可用
+     */
+    private List<PrinterAssets.Asset> assets;
+
+    private boolean prepared;
+
+    public PrintJob(DeviceConnFactoryManager device, Map<String, Object> config, final LineReader lines) {
+        this.device = device;
+        this.requestConfig = config;
+        this.lines = lines;
+        this.printerCommand = device.getCurrentPrinterCommand();
+        if (printerCommand == null || PrintContent.hasStreamedImage(lines)) {
+            encoding = null;
+            return;
+        }
+        encoding = new FutureTask<>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                prepare();
+                return PrintContent.encode(printerCommand, PrintJob.this.config, lines);
+            }
+        });
+        try {
+            ThreadPool.getInstantiation().encode(encoding);
+        } catch (RejectedExecutionException e) {
+            // 编码线程池已满，留到发送阶段在队列线程上编码
+        }
+    }
+
+    /**
+     * 读取该打印机保存的代码页并解析驻留图片位置，与编码一样要遍历 lines，不能与编码同时进行
+     */
+    private synchronized void prepare() {
+        if (prepared) {
+            return;
+        }
+        config = PrinterAssets.withSlots(device, printerCommand, withCodePage(device, requestConfig), lines);
+        assets = PrinterAssets.collect(printerCommand, config, lines);
+        prepared = true;
+    }
+
+    /**
+     * 发送阶段，在打印机任务队列中执行；写出失败时返回 false
+     */
+    public boolean send(DeviceConnFactoryManager device) {
+        PrinterCommand current = device.getCurrentPrinterCommand();
+        if (current == null) {
+            return false;
+        }
+        if (encoding == null) {
+            prepare();
+            // 指令集变化时驻留图片的存放位置也随之变化
+            Map<String, Object> jobConfig = current == printerCommand ? config : PrinterAssets.withSlots(device, current, config, lines);
+            if (!PrinterAssets.ensure(device, current, current == printerCommand ? assets : PrinterAssets.collect(current, jobConfig, lines))) {
+                return false;
+            }
+            if (PrintContent.hasStreamedImage(lines)) {
+                PrintContent.stream(current, jobConfig, lines, device);
+                return device.getConnState();
+            }
+            return device.sendDataFlowControlled(PrintContent.encode(current, jobConfig, lines));
+        }
+
+        byte[] command = await();
+        prepare();
+        List<PrinterAssets.Asset> required = assets;
+        if (current != printerCommand) {
+            lines.rewind();
+            Map<String, Object> jobConfig = PrinterAssets.withSlots(device, current, config, lines);
+            required = PrinterAssets.collect(current, jobConfig, lines);
+            command = PrintContent.encode(current, jobConfig, lines);
+        }
+        return command != null && PrinterAssets.ensure(device, current, required) && device.sendDataFlowControlled(command);
+    }
+
+    /**
+     * 任务未指定 codepage 时使用该打印机保存的代码页，不修改调用方的 config
+     */
+    private static Map<String, Object> withCodePage(DeviceConnFactoryManager device, Map<String, Object> config) {
+        if (config != null && config.get("codepage") != null) {
+            return config;
+        }
+        PrinterCapabilityStore store = device.getCapabilityStore();
+        CodePage codePage = store == null ? null : store.getCodePage(device.getMacAddress());
+        if (codePage == null) {
+            return config;
+        }
+        Map<String, Object> ret = config == null ? new HashMap<String, Object>() : new HashMap<>(config);
+        ret.put("codepage", codePage.name());
+        return ret;
+    }
+
+    /**
+     * 任务未能进入打印机队列时取消尚未开始的编码
+     */
+    public void cancel() {
+        if (encoding != null) {
+            encoding.cancel(false);
+        }
+    }
+
+    /**
+     * 等待编码完成；编码尚未开始时直接在当前线程编码，不占用编码线程池也不会因线程池排队而死等
+     */
+    private byte[] await() {
+        encoding.run();
+        try {
+            return encoding.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.bluetooth_print;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译打印模板
+ * 模板行中 type 为 slot 的行是变量位，其余固定部分（含任务开始和结束指令）按打印机指令类型编码一次，
+ * 打印时只编码变量位的内容并拼接
+ * 编译结果在各打印机间共用，而驻留图片的存放位置与是否已下载因打印机而异，模板中的图片总是随指令发送（assets 为 false）
+ */
+public class PrintTemplate {
+    /**
+     * 变量位行类型，{type:'slot', name:'items'}
+     */
+    public static final String TYPE_SLOT = "slot";
+
+    private final Map<String, Object> config;
+
+    private final List<Map<String, Object>> list;
+
+    /**
+     * 按指令类型缓存的编译结果：byte[] 为固定指令段，String 为变量位名称
+     */
+    private final EnumMap<PrinterCommand, List<Object>> segments = new EnumMap<>(PrinterCommand.class);
+
+    public PrintTemplate(Map<String, Object> config, List<Map<String, Object>> list) {
+        Map<String, Object> c = config == null ? new HashMap<String, Object>() : new HashMap<>(config);
+        c.put("assets", false);
+        this.config = c;
+        this.list = list;
+    }
+
+    /**
+     * 编译模板固定部分，每种指令类型只编译一次
+     */
+    private synchronized List<Object> compile(PrinterCommand printerCommand) {
+        List<Object> parts = segments.get(printerCommand);
+        if (parts != null) {
+            return parts;
+        }
+
+        parts = new ArrayList<>();
+        CommandBuffer buffer = PrintContent.newCommandBuffer(printerCommand);
+        List<Map<String, Object>> run = new ArrayList<>();
+        PrintContent.addHeader(printerCommand, buffer, config);
+        for (Map<String, Object> m : list) {
+            if (TYPE_SLOT.equals(m.get("type"))) {
+                PrintContent.addLines(printerCommand, buffer, config, run);
+                run.clear();
+                parts.add(buffer.getCommand());
+                parts.add(String.valueOf(m.get("name")));
+                buffer.clear();
+            } else {
+                run.add(m);
+            }
+        }
+        PrintContent.addLines(printerCommand, buffer, config, run);
+        PrintContent.addFooter(printerCommand, buffer, config);
+        parts.add(buffer.getCommand());
+
+        segments.put(printerCommand, parts);
+        return parts;
+    }
+
+    /**
+     * 生成打印指令：固定指令段原样拼接，变量位编码 slots 中对应的行，缺失的变量位留空
+     */
+    public byte[] render(PrinterCommand printerCommand, Map<String, List<Map<String, Object>>> slots) {
+        List<Object> parts = compile(printerCommand);
+        CommandBuffer buffer = PrintContent.newCommandBuffer(printerCommand);
+        int staticSize = 0;
+        for (Object part : parts) {
+            if (part instanceof byte[]) {
+                staticSize += ((byte[]) part).length;
+            }
+        }
+        buffer.ensureCapacity(staticSize);
+
+        for (Object part : parts) {
+            if (part instanceof byte[]) {
+                buffer.addArray((byte[]) part);
+            } else if (slots != null) {
+                List<Map<String, Object>> lines = slots.get(part);
+                if (lines != null) {
+                    PrintContent.addLines(printerCommand, buffer, config, lines);
+                }
+            }
+        }
+        return buffer.getCommand();
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.bluetooth_print;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 驻留在打印机中的图片（店铺 logo、固定表头等）
+ * 带 name 的图片行只下载一次：ESC 存为 NV 图形（GS ( L fn 67），TSC 以 BMP 文件下载到 Flash（DOWNLOAD F），
+ * 之后的任务只发送几个字节的引用指令（GS ( L fn 69、PUTBMP）；按蓝牙地址记录已下载图片的内容哈希，
+ * 内容变化时覆盖同名图片，指令集变化或缓存的指令集未被确认（视为打印机被重置或更换）时清除记录
+ * 存放位置由名称哈希得到，与已记录的其它名称冲突时顺延到下一个空闲位置，名称与位置的对应关系同样按蓝牙地址记录
+ * config 中 assets 为 false 时图片照常随任务发送
+ */
+public class PrinterAssets {
+    private static final String TAG = PrinterAssets.class.getSimpleName();
+
+    /**
+     * 标签图片宽度，与 {@link PrintContent} 中标签位图一致
+     */
+    static final int LABEL_IMAGE_WIDTH = 300;
+
+    /**
+     * config 中记录任务所用存放位置（名称 → 位置）的键，见 {@link #withSlots}
+     */
+    private static final String KEY_SLOTS = "assetSlots";
+
+    /**
+     * ESC NV 图形键码的取值个数（33~126）
+     */
+    private static final int KEY_CODES = 94;
+
+    private PrinterAssets() {
+    }
+
+    public static class Asset {
+        final String name;
+        final String content;
+        final int width;
+        final ImageProcessor.Dither dither;
+        final String hash;
+
+        /**
+         * 打印机中的存放位置：ESC 为两个键码字符，TSC 为文件名
+         */
+        final String slot;
+
+        Asset(PrinterCommand printerCommand, String name, String slot, String content, int width, ImageProcessor.Dither dither) {
+            this.name = name;
+            this.slot = slot;
+            this.content = content;
+            this.width = width;
+            this.dither = dither;
+            this.hash = RasterCache.keyOf(printerCommand, content, width, dither.ordinal());
+        }
+    }
+
+    /**
+     * 是否按驻留图片处理该图片行
+     */
+    static boolean isResident(PrinterCommand printerCommand, Map<String, Object> config, String name) {
+        return name != null && !name.startsWith("@")
+                && (printerCommand == PrinterCommand.ESC || printerCommand == PrinterCommand.TSC)
+                && (config == null || !Boolean.FALSE.equals(config.get("assets")));
+    }
+
+    /**
+     * 任务中引用的驻留图片，只扫描内容行，不解码图片
+     */
+    public static List<Asset> collect(PrinterCommand printerCommand, Map<String, Object> config, LineReader lines) {
+        if (printerCommand == null) {
+            return Collections.emptyList();
+        }
+        ImageProcessor.Dither dither = PrintContent.ditherOf(config);
+        List<Asset> assets = null;
+        try {
+            while (lines.next()) {
+                if (lines.type() == LineReader.TYPE_IMAGE && isResident(printerCommand, config, lines.name())) {
+                    if (assets == null) {
+                        assets = new ArrayList<>();
+                    }
+                    int width = printerCommand == PrinterCommand.TSC ? LABEL_IMAGE_WIDTH : lines.width();
+                    assets.add(new Asset(printerCommand, lines.name(), slotOf(printerCommand, config, lines.name()), lines.content(), width, dither));
+                }
+            }
+        } finally {
+            lines.rewind();
+        }
+        return assets == null ? Collections.<Asset>emptyList() : assets;
+    }
+
+    /**
+     * 下载打印机中还没有（或内容已变化）的图片，在打印机任务队列中、发送任务内容之前执行；下载失败时返回 false
+     */
+    public static boolean ensure(DeviceConnFactoryManager device, PrinterCommand printerCommand, List<Asset> assets) {
+        PrinterCapabilityStore store = device.getCapabilityStore();
+        String address = device.getMacAddress();
+        for (Asset asset : assets) {
+            if (store != null && asset.hash.equals(store.getAssetHash(address, asset.slot))) {
+                continue;
+            }
+            byte[] upload = upload(printerCommand, asset);
+            if (upload == null) {
+                continue;
+            }
+            Log.i(TAG, "******************* download " + asset.name + " to " + address + ", " + upload.length + " bytes");
+            if (!device.sendDataFlowControlled(upload)) {
+                return false;
+            }
+            if (store != null) {
+                store.putAssetHash(address, asset.slot, asset.hash);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 下载图片的指令，图片无法解码或宽高为 0 时返回 null
+     */
+    static byte[] upload(PrinterCommand printerCommand, Asset asset) {
+        if (asset.width <= 0) {
+            return null;
+        }
+        if (printerCommand == PrinterCommand.ESC) {
+            byte[] bits = PrintContent.receiptBits(asset.content, asset.width, asset.dither);
+            if (bits == null || bits.length == 0) {
+                return null;
+            }
+            int widthBytes = (asset.width + 7) / 8;
+            EscCommandBuffer esc = new EscCommandBuffer(bits.length + 16);
+            esc.addDefineNvGraphics(asset.slot.charAt(0), asset.slot.charAt(1), widthBytes * 8, bits.length / widthBytes, bits, 0, bits.length);
+            return esc.getCommand();
+        }
+        byte[] bits = PrintContent.packedImage(asset.content, asset.width, asset.dither);
+        if (bits == null || bits.length == 0) {
+            return null;
+        }
+        TscCommandBuffer tsc = new TscCommandBuffer(bits.length + 128);
+        tsc.addDownloadFile(asset.slot, toBmp(bits, (asset.width + 7) / 8));
+        return tsc.getCommand();
+    }
+
+    /**
+     * 解析任务中驻留图片在该打印机上的存放位置，写入 config 的 assetSlots，不修改调用方的 config
+     */
+    public static Map<String, Object> withSlots(DeviceConnFactoryManager device, PrinterCommand printerCommand,
+                                                Map<String, Object> config, LineReader lines) {
+        PrinterCapabilityStore store = device.getCapabilityStore();
+        if (store == null || printerCommand == null) {
+            return config;
+        }
+        Map<String, String> slots = null;
+        try {
+            while (lines.next()) {
+                String name = lines.name();
+                if (lines.type() == LineReader.TYPE_IMAGE && isResident(printerCommand, config, name)) {
+                    if (slots == null) {
+                        slots = new HashMap<>();
+                    }
+                    slots.put(name, resolveSlot(store, device.getMacAddress(), printerCommand, name));
+                }
+            }
+        } finally {
+            lines.rewind();
+        }
+        if (slots == null) {
+            return config;
+        }
+        Map<String, Object> ret = config == null ? new HashMap<String, Object>() : new HashMap<>(config);
+        ret.put(KEY_SLOTS, slots);
+        return ret;
+    }
+
+    /**
+     * 图片的存放位置：ESC 为 kc1、kc2 两个键码字符，TSC 为文件名；config 中没有已解析的位置时按名称哈希
+     */
+    @SuppressWarnings("unchecked")
+    static String slotOf(PrinterCommand printerCommand, Map<String, Object> config, String name) {
+        Object slots = config == null ? null : config.get(KEY_SLOTS);
+        String slot = slots instanceof Map ? ((Map<String, String>) slots).get(name) : null;
+        return slot != null ? slot : slotName(printerCommand, slotIndex(printerCommand, name));
+    }
+
+    /**
+     * 名称已记录时使用记录的位置；否则从名称哈希对应的位置起，取第一个未分配给其它名称的位置并记录
+     */
+    private static synchronized String resolveSlot(PrinterCapabilityStore store, String address, PrinterCommand printerCommand, String name) {
+        String slot = store.getAssetSlot(address, printerCommand, name);
+        if (slot != null) {
+            return slot;
+        }
+        Set<String> used = store.getAssetSlots(address, printerCommand);
+        int count = printerCommand == PrinterCommand.ESC ? KEY_CODES * KEY_CODES : 0x1000000;
+        int index = slotIndex(printerCommand, name);
+        slot = slotName(printerCommand, index);
+        for (int i = 1; i < count && used.contains(slot); i++) {
+            slot = slotName(printerCommand, (index + i) % count);
+        }
+        store.putAssetSlot(address, printerCommand, name, slot);
+        return slot;
+    }
+
+    /**
+     * 名称哈希对应的位置序号：ESC 为 (kc1 - 33) + (kc2 - 33) * 94，TSC 为文件名中的 24 位十六进制数
+     */
+    private static int slotIndex(PrinterCommand printerCommand, String name) {
+        int hash = name.hashCode();
+        if (printerCommand == PrinterCommand.ESC) {
+            return Math.abs(hash % KEY_CODES) + Math.abs((hash / KEY_CODES) % KEY_CODES) * KEY_CODES;
+        }
+        return hash & 0xFFFFFF;
+    }
+
+    /**
+     * 位置序号对应的存放位置：ESC 为两个可打印键码字符（33~126），TSC 为 8.3 格式文件名
+     */
+    private static String slotName(PrinterCommand printerCommand, int index) {
+        if (printerCommand == PrinterCommand.ESC) {
+            return new String(new char[]{(char) (33 + index % KEY_CODES), (char) (33 + index / KEY_CODES)});
+        }
+        String hex = Integer.toHexString(index).toUpperCase();
+        return "BP" + ("000000" + hex).substring(hex.length()) + ".BMP";
+    }
+
+    /**
+     * 单色 BMP：调色板 0 为黑、1 为白，行自下而上、按 4 字节对齐
+     */
+    static byte[] toBmp(byte[] bits, int widthBytes) {
+        int height = bits.length / widthBytes;
+        int stride = (widthBytes + 3) / 4 * 4;
+        int offset = 14 + 40 + 8;
+        int size = offset + stride * height;
+        byte[] bmp = new byte[size];
+        bmp[0] = 'B';
+        bmp[1] = 'M';
+        putIntLE(bmp, 2, size);
+        putIntLE(bmp, 10, offset);
+        putIntLE(bmp, 14, 40);
+        putIntLE(bmp, 18, widthBytes * 8);
+        putIntLE(bmp, 22, height);
+        bmp[26] = 1;
+        bmp[28] = 1;
+        putIntLE(bmp, 34, stride * height);
+        putIntLE(bmp, 46, 2);
+        // 调色板：0 黑 1 白
+        bmp[58] = (byte) 0xFF;
+        bmp[59] = (byte) 0xFF;
+        bmp[60] = (byte) 0xFF;
+        for (int row = 0; row < height; row++) {
+            int src = row * widthBytes;
+            int dst = offset + (height - 1 - row) * stride;
+            for (int i = 0; i < widthBytes; i++) {
+                bmp[dst + i] = (byte) ~bits[src + i];
+            }
+            for (int i = widthBytes; i < stride; i++) {
+                bmp[dst + i] = (byte) 0xFF;
+            }
+        }
+        return bmp;
+    }
+
+    private static void putIntLE(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+        data[offset + 2] = (byte) (value >> 16);
+        data[offset + 3] = (byte) (value >> 24);
+    }
+}
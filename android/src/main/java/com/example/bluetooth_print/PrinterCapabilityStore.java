@@ -0,0 +1,159 @@
+package com.example.bluetooth_print;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按蓝牙地址保存打印机能力（所用指令集、是否应答 GS r 1、票据代码页），重新连接时直接使用，不必再逐个查询指令集
+ * 同时记录已下载到打印机中的图片（图片名称对应的存放位置、各位置上的内容哈希），见 {@link PrinterAssets}
+ * 读取可能阻塞在磁盘加载上，只在任务队列、编码线程或线程池中调用，不在主线程调用
+ */
+public class PrinterCapabilityStore {
+    private static final String PREFS_NAME = "bluetooth_print_printers";
+
+    private static final String KEY_COMMAND = ".command";
+
+    private static final String KEY_BARRIER = ".barrier";
+
+    private static final String KEY_ASSET = ".asset.";
+
+    private static final String KEY_ASSET_SLOT = ".assetslot.";
+
+    private static final String KEY_CODE_PAGE = ".codepage";
+
+    private static PrinterCapabilityStore instance;
+
+    private final SharedPreferences preferences;
+
+    private PrinterCapabilityStore(Context context) {
+        preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 各打印机共用一个实例
+     */
+    public static synchronized PrinterCapabilityStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new PrinterCapabilityStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * 已保存的指令集，没有记录时返回 null
+     */
+    public PrinterCommand getPrinterCommand(String address) {
+        String name = preferences.getString(address + KEY_COMMAND, null);
+        if (name == null) {
+            return null;
+        }
+        try {
+            return PrinterCommand.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public void putPrinterCommand(String address, PrinterCommand command) {
+        PrinterCommand previous = getPrinterCommand(address);
+        if (command != previous) {
+            if (previous != null) {
+                // 换了打印机或打印机被重新设置，之前下载的图片不再可信
+                removeAssets(address);
+            }
+            preferences.edit().putString(address + KEY_COMMAND, command.name()).apply();
+        }
+    }
+
+    /**
+     * 打印机是否应答 GS r 1，没有记录时视为支持
+     */
+    public boolean isBarrierSupported(String address) {
+        return preferences.getBoolean(address + KEY_BARRIER, true);
+    }
+
+    public void putBarrierSupported(String address, boolean supported) {
+        preferences.edit().putBoolean(address + KEY_BARRIER, supported).apply();
+    }
+
+    /**
+     * 该打印机票据文本使用的代码页，没有记录时返回 null
+     */
+    public CodePage getCodePage(String address) {
+        return CodePage.parse(preferences.getString(address + KEY_CODE_PAGE, null));
+    }
+
+    /**
+     * 保存代码页，codePage 为 null 时删除记录
+     */
+    public void putCodePage(String address, CodePage codePage) {
+        if (codePage == null) {
+            preferences.edit().remove(address + KEY_CODE_PAGE).apply();
+        } else {
+            preferences.edit().putString(address + KEY_CODE_PAGE, codePage.name()).apply();
+        }
+    }
+
+    /**
+     * 打印机中 slot 位置上已下载图片的内容哈希，没有记录时返回 null
+     */
+    public String getAssetHash(String address, String slot) {
+        return preferences.getString(address + KEY_ASSET + slot, null);
+    }
+
+    public void putAssetHash(String address, String slot, String hash) {
+        preferences.edit().putString(address + KEY_ASSET + slot, hash).apply();
+    }
+
+    /**
+     * 图片名称在该打印机上的存放位置，没有记录时返回 null
+     */
+    public String getAssetSlot(String address, PrinterCommand command, String name) {
+        return preferences.getString(address + KEY_ASSET_SLOT + command.name() + '.' + name, null);
+    }
+
+    public void putAssetSlot(String address, PrinterCommand command, String name, String slot) {
+        preferences.edit().putString(address + KEY_ASSET_SLOT + command.name() + '.' + name, slot).apply();
+    }
+
+    /**
+     * 该打印机上已分配给图片名称的存放位置
+     */
+    public Set<String> getAssetSlots(String address, PrinterCommand command) {
+        String prefix = address + KEY_ASSET_SLOT + command.name() + '.';
+        Set<String> slots = new HashSet<>();
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            if (entry.getKey().startsWith(prefix) && entry.getValue() instanceof String) {
+                slots.add((String) entry.getValue());
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * 删除该打印机已下载图片的记录，之后的任务重新分配位置并下载
+     */
+    public void removeAssets(String address) {
+        String prefix = address + KEY_ASSET;
+        String slotPrefix = address + KEY_ASSET_SLOT;
+        SharedPreferences.Editor editor = preferences.edit();
+        for (String key : preferences.getAll().keySet()) {
+            if (key.startsWith(prefix) || key.startsWith(slotPrefix)) {
+                editor.remove(key);
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * 删除该打印机探测得到的记录；代码页是用户设置，只通过 {@link #putCodePage} 清除
+     */
+    public void remove(String address) {
+        removeAssets(address);
+        preferences.edit().remove(address + KEY_COMMAND).remove(address + KEY_BARRIER).apply();
+    }
+}
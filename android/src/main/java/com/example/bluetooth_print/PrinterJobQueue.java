@@ -0,0 +1,341 @@
+package com.example.bluetooth_print;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 单台打印机的任务队列
+ * 同一台打印机的任务依次执行，不同打印机的队列在线程池中并行执行
+ * 任务按优先级出队：钱箱、状态查询等控制指令（HIGH）先于加急打印（EXPEDITED）与普通打印（NORMAL），报表、补打等批量任务（LOW）最后执行；
+ * 正在执行的任务在指令边界调用 {@link #runUrgent()}，排队中的 HIGH 任务插入执行，不必等当前任务结束；
+ * 打印任务不插入执行，否则两张票据的内容会交错，插入任务的 ESC @ 也会重置外层任务的打印机状态
+ * 连接管理任务（SYSTEM）优先于所有任务，连接断开暂停队列时也照常执行
+ */
+public class PrinterJobQueue {
+    private static final String TAG = PrinterJobQueue.class.getSimpleName();
+
+    /**
+     * 单台打印机最多排队的任务数，SYSTEM 任务不计入上限
+     */
+    public static final int MAX_PENDING = 64;
+
+    /**
+     * 线程池拒绝时重试提交的间隔，每次翻倍直到上限
+     */
+    private static final long RETRY_MIN_MS = 50;
+    private static final long RETRY_MAX_MS = 2000;
+
+    public enum Priority {
+        //连接管理：指令集探测、心跳，队列暂停时照常执行
+        SYSTEM,
+        //控制指令：开钱箱、状态查询，可插入正在执行的任务
+        HIGH,
+        //加急打印：排在普通打印之前，但不插入正在执行的任务
+        EXPEDITED,
+        //普通打印
+        NORMAL,
+        //批量打印：报表、补打
+        LOW
+    }
+
+    /**
+     * 被丢弃时需要通知提交方的任务，如等待全部结果才返回的批量打印
+     */
+    public interface DroppableTask extends Runnable {
+        /**
+         * 任务未执行即被 {@link #clear()} 丢弃，在调用 clear 的线程上回调
+         */
+        void onDropped();
+    }
+
+    private final EnumMap<Priority, ArrayDeque<Job>> queues = new EnumMap<>(Priority.class);
+
+    private final EnumMap<Priority, Stats> stats = new EnumMap<>(Priority.class);
+
+    private Job active;
+
+    /**
+     * 正在执行任务的线程，只有该线程可以插入执行 HIGH 任务
+     */
+    private volatile Thread worker;
+
+    private boolean preempting;
+
+    /**
+     * 连接断开重连期间暂停，只执行 SYSTEM 任务，其它任务保留在队列中
+     */
+    private boolean paused;
+
+    /**
+     * 已在共享定时器上安排了重试提交
+     */
+    private boolean retryPending;
+
+    private long retryDelayMs;
+
+    public PrinterJobQueue() {
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<Job>());
+            stats.put(priority, new Stats());
+        }
+    }
+
+    public void execute(Runnable r) {
+        execute(r, Priority.NORMAL);
+    }
+
+    /**
+     * SYSTEM 任务（探测、心跳）不受排队上限限制，线程池已满时留在队列中重试，保证重连期间排满任务时仍能恢复连接
+     *
+     * @throws RejectedExecutionException 排队任务数已达 {@link #MAX_PENDING}，或线程池已满
+     */
+    public synchronized void execute(Runnable r, Priority priority) {
+        if (r == null) {
+            throw new NullPointerException("execute(Runnable r)传入参数为空");
+        }
+        if (priority != Priority.SYSTEM && size() >= MAX_PENDING) {
+            stats.get(priority).rejected++;
+            throw new RejectedExecutionException("printer queue is full");
+        }
+        Job job = new Job(r, priority);
+        queues.get(priority).offer(job);
+        if (active == null) {
+            if (priority == Priority.SYSTEM) {
+                scheduleNextOrRetry();
+            } else {
+                try {
+                    scheduleNext();
+                } catch (RejectedExecutionException e) {
+                    queues.get(priority).removeLastOccurrence(job);
+                    stats.get(priority).rejected++;
+                    throw e;
+                }
+            }
+        }
+        stats.get(priority).submitted++;
+    }
+
+    /**
+     * 提交下一个任务；线程池拒绝时任务放回队首并抛出异常
+     */
+    private synchronized void scheduleNext() {
+        if ((active = poll(paused ? Priority.SYSTEM : Priority.LOW)) != null) {
+            try {
+                ThreadPool.getInstantiation().execute(active);
+            } catch (RejectedExecutionException e) {
+                queues.get(active.priority).addFirst(active);
+                active = null;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 提交下一个任务，线程池拒绝时在共享定时器上按退避间隔重试
+     */
+    private synchronized void scheduleNextOrRetry() {
+        try {
+            scheduleNext();
+            retryDelayMs = 0;
+        } catch (RejectedExecutionException e) {
+            if (retryPending) {
+                return;
+            }
+            retryDelayMs = retryDelayMs == 0 ? RETRY_MIN_MS : Math.min(retryDelayMs * 2, RETRY_MAX_MS);
+            Log.w(TAG, "******************* next job deferred " + retryDelayMs + "ms: " + e.getMessage());
+            try {
+                ThreadPool.getInstantiation().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        retry();
+                    }
+                }, retryDelayMs);
+                retryPending = true;
+            } catch (RejectedExecutionException ex) {
+                Log.w(TAG, "******************* retry not scheduled: " + ex.getMessage());
+            }
+        }
+    }
+
+    private synchronized void retry() {
+        retryPending = false;
+        if (active == null) {
+            scheduleNextOrRetry();
+        }
+    }
+
+    /**
+     * 取出优先级不低于 lowest 的第一个任务
+     */
+    private Job poll(Priority lowest) {
+        for (Priority priority : Priority.values()) {
+            Job job = queues.get(priority).poll();
+            if (job != null || priority == lowest) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在当前任务的指令边界插入执行排队中的 SYSTEM、HIGH 任务，只在执行任务的线程上生效
+     */
+    public void runUrgent() {
+        if (Thread.currentThread() != worker || preempting) {
+            return;
+        }
+        preempting = true;
+        try {
+            Job job;
+            while ((job = pollUrgent()) != null) {
+                job.run();
+            }
+        } finally {
+            preempting = false;
+        }
+    }
+
+    private synchronized Job pollUrgent() {
+        Job job = poll(paused ? Priority.SYSTEM : Priority.HIGH);
+        if (job != null) {
+            stats.get(job.priority).preempted++;
+        }
+        return job;
+    }
+
+    /**
+     * 暂停或恢复执行普通任务
+     */
+    public synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+        if (!paused && active == null) {
+            scheduleNextOrRetry();
+        }
+    }
+
+    private synchronized void onStart(Job job) {
+        Stats s = stats.get(job.priority);
+        long wait = System.currentTimeMillis() - job.enqueuedAt;
+        s.totalWaitMs += wait;
+        s.maxWaitMs = Math.max(s.maxWaitMs, wait);
+    }
+
+    private synchronized void onFinish(Job job) {
+        stats.get(job.priority).completed++;
+    }
+
+    /**
+     * 排队中（未开始执行）的任务数
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (ArrayDeque<Job> queue : queues.values()) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * 丢弃排队中的任务，正在执行的任务不受影响；{@link DroppableTask} 在释放队列锁后收到通知
+     */
+    public void clear() {
+        List<DroppableTask> dropped = new ArrayList<>();
+        synchronized (this) {
+            for (ArrayDeque<Job> queue : queues.values()) {
+                for (Job job : queue) {
+                    if (job.task instanceof DroppableTask) {
+                        dropped.add((DroppableTask) job.task);
+                    }
+                }
+                queue.clear();
+            }
+        }
+        for (DroppableTask task : dropped) {
+            task.onDropped();
+        }
+    }
+
+    /**
+     * 各优先级的排队数与等待时间统计
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> ret = new HashMap<>();
+        for (Priority priority : Priority.values()) {
+            Stats s = stats.get(priority);
+            long started = s.submitted - queues.get(priority).size();
+            Map<String, Object> item = new HashMap<>();
+            item.put("depth", queues.get(priority).size());
+            item.put("submitted", s.submitted);
+            item.put("completed", s.completed);
+            item.put("preempted", s.preempted);
+            item.put("rejected", s.rejected);
+            item.put("avgWaitMs", started > 0 ? s.totalWaitMs / started : 0);
+            item.put("maxWaitMs", s.maxWaitMs);
+            ret.put(priority.name().toLowerCase(), item);
+        }
+        return ret;
+    }
+
+    /**
+     * 按名称解析打印任务的优先级：high 为 EXPEDITED，low 为 LOW，其它为 NORMAL
+     * SYSTEM 与 HIGH 会插入正在执行的任务，只用于内部的连接管理与控制指令
+     */
+    public static Priority parsePriority(Object name) {
+        if ("high".equalsIgnoreCase(String.valueOf(name))) {
+            return Priority.EXPEDITED;
+        }
+        if ("low".equalsIgnoreCase(String.valueOf(name))) {
+            return Priority.LOW;
+        }
+        return Priority.NORMAL;
+    }
+
+    private static class Stats {
+        long submitted;
+        long completed;
+        long preempted;
+        long rejected;
+        long totalWaitMs;
+        long maxWaitMs;
+    }
+
+    private class Job implements Runnable {
+        final Runnable task;
+        final Priority priority;
+        final long enqueuedAt = System.currentTimeMillis();
+
+        Job(Runnable task, Priority priority) {
+            this.task = task;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            onStart(this);
+            if (this != active) {
+                // 插入执行的任务，完成后回到当前任务
+                try {
+                    task.run();
+                } finally {
+                    onFinish(this);
+                }
+                return;
+            }
+            worker = Thread.currentThread();
+            try {
+                task.run();
+            } finally {
+                worker = null;
+                onFinish(this);
+                scheduleNextOrRetry();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.bluetooth_print;
+
+/**
+ * 打印机应答事件监听，回调在读线程上执行，不要在回调中做耗时操作
+ */
+public interface PrinterStatusListener {
+    /**
+     * 缺纸
+     */
+    int STATUS_PAPER_OUT = 0x01;
+
+    /**
+     * 开盖
+     */
+    int STATUS_COVER_OPEN = 0x02;
+
+    /**
+     * 打印机出错
+     */
+    int STATUS_ERROR = 0x04;
+
+    /**
+     * 卡纸（TSC）
+     */
+    int STATUS_PAPER_JAM = 0x08;
+
+    /**
+     * 碳带用完（TSC）
+     */
+    int STATUS_RIBBON_OUT = 0x10;
+
+    /**
+     * 暂停（TSC）
+     */
+    int STATUS_PAUSED = 0x20;
+
+    /**
+     * 正在打印（TSC）
+     */
+    int STATUS_PRINTING = 0x40;
+
+    /**
+     * 识别出打印机所使用的指令
+     */
+    void onPrinterCommand(String address, PrinterCommand command);
+
+    /**
+     * 打印机实时状态，status 为 STATUS_* 的按位组合，0 表示正常
+     */
+    void onRealtimeStatus(String address, int status);
+
+    /**
+     * 缓冲区数据已处理完成（ESC GS r 应答、TSC/CPCL 查询应答）
+     */
+    void onBufferStatus(String address);
+
+    /**
+     * 连接异常断开
+     */
+    void onDisconnected(String address);
+}
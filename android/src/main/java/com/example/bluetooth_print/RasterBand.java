@@ -0,0 +1,86 @@
+package com.example.bluetooth_print;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 位图点阵（每字节 8 点、高位在左、1 为黑点）中的一段非空白行
+ * 连续空白行达到 minGap 时分段，各段去掉左右全白的字节列；空白行改为走纸或坐标偏移，不再逐行发送
+ */
+public class RasterBand {
+    /**
+     * 起始行与行数
+     */
+    public final int top;
+    public final int rows;
+
+    /**
+     * 含黑点的字节列范围 [left, right)
+     */
+    public final int left;
+    public final int right;
+
+    private RasterBand(int top, int rows, int left, int right) {
+        this.top = top;
+        this.rows = rows;
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * 按连续空白行分段，全白图片返回空列表；短于 minGap 的空白行保留在段内，避免把图片切得过碎
+     */
+    public static List<RasterBand> split(byte[] bits, int widthBytes, int minGap) {
+        List<RasterBand> bands = new ArrayList<>();
+        int height = widthBytes > 0 ? bits.length / widthBytes : 0;
+        int start = -1;
+        int last = -1;
+        for (int row = 0; row < height; row++) {
+            if (isBlank(bits, row * widthBytes, widthBytes)) {
+                continue;
+            }
+            if (start >= 0 && row - last - 1 >= minGap) {
+                bands.add(band(bits, widthBytes, start, last + 1));
+                start = -1;
+            }
+            if (start < 0) {
+                start = row;
+            }
+            last = row;
+        }
+        if (start >= 0) {
+            bands.add(band(bits, widthBytes, start, last + 1));
+        }
+        return bands;
+    }
+
+    private static RasterBand band(byte[] bits, int widthBytes, int top, int bottom) {
+        int left = widthBytes;
+        int right = 0;
+        for (int row = top; row < bottom; row++) {
+            int offset = row * widthBytes;
+            for (int i = 0; i < left; i++) {
+                if (bits[offset + i] != 0) {
+                    left = i;
+                    break;
+                }
+            }
+            for (int i = widthBytes - 1; i >= right; i--) {
+                if (bits[offset + i] != 0) {
+                    right = i + 1;
+                    break;
+                }
+            }
+        }
+        return new RasterBand(top, bottom - top, left, right);
+    }
+
+    private static boolean isBlank(byte[] bits, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (bits[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
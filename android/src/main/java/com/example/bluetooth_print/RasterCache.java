@@ -0,0 +1,39 @@
+package com.example.bluetooth_print;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+/**
+ * 图片光栅缓存
+ * 以图片内容哈希、目标宽度、模式为键缓存二值化后的单色点阵，命中时跳过 Base64 解码、位图解码与二值化
+ */
+public class RasterCache extends ByteArrayLruCache {
+    /**
+     * 默认缓存字节预算 2MB
+     */
+    private static final long DEFAULT_MAX_BYTES = 2L * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static RasterCache instance;
+
+    private RasterCache(long maxBytes) {
+        super(maxBytes);
+    }
+
+    public static synchronized RasterCache getInstance() {
+        if (instance == null) {
+            instance = new RasterCache(DEFAULT_MAX_BYTES);
+        }
+        return instance;
+    }
+
+    /**
+     * 光栅键：指令类型 + 目标宽度 + 模式 + 图片内容哈希
+     */
+    public static String keyOf(PrinterCommand printerCommand, String content, int width, int mode) {
+        MessageDigest digest = newDigest();
+        digest.update(content.getBytes(UTF_8));
+        return printerCommand.name() + ':' + width + ':' + mode + ':' + toHex(digest.digest());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.bluetooth_print;
+
+/**
+ * 打印机应答环形缓冲区
+ * 预分配固定容量，读线程写入后由应答解析在同一线程消费，读写过程不分配内存；
+ * 应答被拆分到多次读取或多条应答合并在一次读取中时，未解析完的字节保留到下一次读取
+ * 写满时丢弃最旧的数据
+ */
+public class ResponseRingBuffer {
+    private final byte[] data;
+
+    private final int mask;
+
+    /**
+     * 读位置，只增不减，取下标时与 mask 按位与
+     */
+    private int head;
+
+    /**
+     * 写位置
+     */
+    private int tail;
+
+    /**
+     * @param capacity 容量，向上取整为 2 的幂
+     */
+    public ResponseRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        data = new byte[size];
+        mask = size - 1;
+    }
+
+    /**
+     * 写入 src 中 [offset, offset + length)
+     */
+    public void write(byte[] src, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            data[tail++ & mask] = src[offset + i];
+        }
+        if (tail - head > data.length) {
+            head = tail - data.length;
+        }
+    }
+
+    /**
+     * 未消费的字节数
+     */
+    public int available() {
+        return tail - head;
+    }
+
+    /**
+     * 查看第 index 个未消费字节（无符号），不移动读位置
+     */
+    public int peek(int index) {
+        return data[(head + index) & mask] & 0xFF;
+    }
+
+    /**
+     * 读取一个字节（无符号），无数据时返回 -1
+     */
+    public int read() {
+        if (head == tail) {
+            return -1;
+        }
+        return data[head++ & mask] & 0xFF;
+    }
+
+    /**
+     * 跳过 n 个字节
+     */
+    public void skip(int n) {
+        head += Math.min(n, available());
+    }
+
+    public void clear() {
+        head = tail;
+    }
+}
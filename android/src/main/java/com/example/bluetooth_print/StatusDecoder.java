@@ -0,0 +1,70 @@
+package com.example.bluetooth_print;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 打印机应答解码器，每种指令集一个实现
+ * 从 {@link ResponseRingBuffer} 中增量解码：应答被拆分到多次读取时，未解码的字节留在缓冲区中等待后续数据，
+ * 多条应答合并在一次读取中时逐条解码；解码结果以回调通知，不分配对象
+ * 只依赖 {@link ResponseRingBuffer}，可以直接用字节数据驱动
+ */
+public abstract class StatusDecoder {
+
+    /**
+     * 解码结果回调
+     */
+    public interface Sink {
+        /**
+         * 实时状态，status 为 PrinterStatusListener.STATUS_* 的按位组合
+         */
+        void onRealtimeStatus(int status);
+
+        /**
+         * 缓冲区数据已处理完成
+         */
+        void onBufferStatus();
+    }
+
+    /**
+     * 解码缓冲区中所有完整的应答
+     */
+    public abstract void decode(ResponseRingBuffer in, Sink sink);
+
+    /**
+     * 已发送一条实时状态查询，下一条无法自行区分类型的应答按实时状态解码
+     */
+    public void expectStatus() {
+    }
+
+    /**
+     * 端口重新打开时复位
+     */
+    public void reset() {
+    }
+
+    /**
+     * 待应答查询数大于 0 时减一并返回 true
+     */
+    protected static boolean takePending(AtomicInteger pending) {
+        int n;
+        do {
+            n = pending.get();
+            if (n <= 0) {
+                return false;
+            }
+        } while (!pending.compareAndSet(n, n - 1));
+        return true;
+    }
+
+    public static StatusDecoder forCommand(PrinterCommand command) {
+        switch (command) {
+            case TSC:
+                return new TscStatusDecoder();
+            case CPCL:
+                return new CpclStatusDecoder();
+            case ESC:
+            default:
+                return new EscStatusDecoder();
+        }
+    }
+}
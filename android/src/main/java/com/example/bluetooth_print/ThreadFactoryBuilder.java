@@ -1,21 +1,21 @@
 package com.example.bluetooth_print;
 
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ThreadFactoryBuilder implements ThreadFactory {
 
     private String name;
-    private int counter;
+    private final AtomicInteger counter = new AtomicInteger(1);
 
     public ThreadFactoryBuilder(String name) {
         this.name = name;
-        counter = 1;
     }
 
     @Override
     public Thread newThread(Runnable runnable) {
         Thread thread = new Thread(runnable, name);
-        thread.setName("ThreadFactoryBuilder_" + name + "_" + counter);
+        thread.setName("ThreadFactoryBuilder_" + name + "_" + counter.getAndIncrement());
         return thread;
     }
 }
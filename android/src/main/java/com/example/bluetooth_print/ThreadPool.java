@@ -3,10 +3,14 @@ package com.example.bluetooth_print;
 import android.util.Log;
 
 import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 public class ThreadPool {
+    private static final String TAG = ThreadPool.class.getSimpleName();
 
     private Runnable mActive;
 
@@ -16,40 +20,66 @@ public class ThreadPool {
      */
     private ThreadPoolExecutor threadPoolExecutor;
 
-    /**
-     * 系统最大可用线程
-     */
-    private final static int CPU_AVAILABLE = Runtime.getRuntime().availableProcessors();
-
     /**
      * 最大线程数
+     * 任务大部分时间阻塞在蓝牙读写上，线程数按同时工作的打印机数估算，而不是按 CPU 核数
      */
-    private final static int MAX_POOL_COUNTS = CPU_AVAILABLE * 2 + 1;
+    private final static int MAX_POOL_COUNTS = 8;
 
     /**
-     * 线程存活时间
+     * 空闲线程存活时间（秒）
      */
-    private final static long AVAILABLE = 1L;
+    private final static long AVAILABLE = 30L;
 
     /**
-     * 核心线程数
+     * 线程池缓存队列容量
      */
-    private final static int CORE_POOL_SIZE = CPU_AVAILABLE + 1;
+    private final static int QUEUE_CAPACITY = 64;
 
     /**
      * 线程池缓存队列
      */
-    private BlockingQueue<Runnable> mWorkQueue = new ArrayBlockingQueue<>(CORE_POOL_SIZE);
+    private BlockingQueue<Runnable> mWorkQueue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
 
     private ArrayDeque<Runnable> mArrayDeque = new ArrayDeque<>();
 
     private ThreadFactory threadFactory = new ThreadFactoryBuilder("ThreadPool");
 
+    /**
+     * 编码线程池，图片解码与光栅化是 CPU 密集任务，线程数按 CPU 核数，不与阻塞在蓝牙读写上的线程争用
+     */
+    private ThreadPoolExecutor encodeExecutor;
+
+    /**
+     * 共享定时器，指令集探测超时、心跳等短任务共用一个线程
+     */
+    private ScheduledThreadPoolExecutor scheduler;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalQueueTimeMs = new AtomicLong();
+    private final AtomicLong maxQueueTimeMs = new AtomicLong();
+
     private ThreadPool() {
-        threadPoolExecutor = new ThreadPoolExecutor(CORE_POOL_SIZE, MAX_POOL_COUNTS, AVAILABLE, TimeUnit.SECONDS, mWorkQueue,threadFactory);
+        // 核心线程数与最大线程数相同：ThreadPoolExecutor 只有在队列满时才会创建核心数以外的线程
+        threadPoolExecutor = new ThreadPoolExecutor(MAX_POOL_COUNTS, MAX_POOL_COUNTS, AVAILABLE, TimeUnit.SECONDS, mWorkQueue, threadFactory,
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        onRejected(r, executor);
+                    }
+                });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        int encodeThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+        encodeExecutor = new ThreadPoolExecutor(encodeThreads, encodeThreads, AVAILABLE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactoryBuilder("Encode"));
+        encodeExecutor.allowCoreThreadTimeOut(true);
+        scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder("Timer"));
+        scheduler.setRemoveOnCancelPolicy(true);
     }
 
-    public static ThreadPool getInstantiation() {
+    public static synchronized ThreadPool getInstantiation() {
         if (threadPool == null) {
             threadPool = new ThreadPool();
         }
@@ -60,13 +90,44 @@ public class ThreadPool {
         if (runnable == null) {
             throw new NullPointerException("addTask(Runnable runnable)传入参数为空");
         }
-        if (threadPoolExecutor.getActiveCount()<MAX_POOL_COUNTS) {
-            Log.i("Lee","目前有"+threadPoolExecutor.getActiveCount()+"个线程正在进行中,有"+mWorkQueue.size()+"个任务正在排队");
-          synchronized (this){
-              threadPoolExecutor.execute(runnable);
-          }
+        execute(runnable);
+    }
+
+    /**
+     * 提交到线程池执行，队列已满时拒绝，由调用方返回错误
+     *
+     * @throws RejectedExecutionException 队列已满或线程池已关闭
+     */
+    public void execute(Runnable runnable) {
+        if (runnable == null) {
+            throw new NullPointerException("execute(Runnable runnable)传入参数为空");
         }
+        submitted.incrementAndGet();
+        threadPoolExecutor.execute(new TimedTask(runnable));
+    }
+
+    private void onRejected(Runnable r, ThreadPoolExecutor executor) {
+        rejected.incrementAndGet();
+        Log.w(TAG, "******************* task rejected, active " + executor.getActiveCount() + ", queued " + executor.getQueue().size());
+        throw new RejectedExecutionException("print thread pool is busy");
+    }
+
+    /**
+     * 提交到编码线程池
+     *
+     * @throws RejectedExecutionException 编码队列已满或线程池已关闭，调用方应改为自行编码
+     */
+    public void encode(Runnable runnable) {
+        encodeExecutor.execute(runnable);
     }
+
+    /**
+     * 在共享定时器上延迟执行，任务须短小且不阻塞
+     */
+    public ScheduledFuture<?> schedule(Runnable runnable, long delayMs) {
+        return scheduler.schedule(runnable, delayMs, TimeUnit.MILLISECONDS);
+    }
+
     public synchronized void addSerialTask(final Runnable r) { //串行线程
         if (r == null) {
             throw new NullPointerException("addTask(Runnable runnable)传入参数为空");
@@ -86,17 +147,70 @@ public class ThreadPool {
             scheduleNext();
         }
     }
-    private void scheduleNext() {
+    private synchronized void scheduleNext() {
         if ((mActive = mArrayDeque.poll()) != null) {
-            threadPoolExecutor.execute(mActive);
+            execute(mActive);
         }
     }
 
+    /**
+     * 线程池运行统计
+     */
+    public Map<String, Object> getStats() {
+        long done = completed.get();
+        Map<String, Object> ret = new HashMap<>();
+        ret.put("poolSize", threadPoolExecutor.getPoolSize());
+        ret.put("maxPoolSize", MAX_POOL_COUNTS);
+        ret.put("active", threadPoolExecutor.getActiveCount());
+        ret.put("queued", mWorkQueue.size());
+        ret.put("queueCapacity", QUEUE_CAPACITY);
+        ret.put("submitted", submitted.get());
+        ret.put("completed", done);
+        ret.put("rejected", rejected.get());
+        ret.put("avgQueueTimeMs", done > 0 ? totalQueueTimeMs.get() / done : 0);
+        ret.put("maxQueueTimeMs", maxQueueTimeMs.get());
+        ret.put("encodeActive", encodeExecutor.getActiveCount());
+        ret.put("encodeQueued", encodeExecutor.getQueue().size());
+        ret.put("encodeCompleted", encodeExecutor.getCompletedTaskCount());
+        return ret;
+    }
+
     public void stopThreadPool() {
-        if (threadPoolExecutor != null) {
-            threadPoolExecutor.shutdown();
-            threadPoolExecutor = null;
-            threadPool = null;
+        synchronized (ThreadPool.class) {
+            if (threadPoolExecutor != null) {
+                threadPoolExecutor.shutdown();
+                threadPoolExecutor = null;
+                encodeExecutor.shutdown();
+                scheduler.shutdownNow();
+                threadPool = null;
+            }
+        }
+    }
+
+    /**
+     * 记录任务在队列中的等待时间
+     */
+    private class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long enqueuedAt = System.currentTimeMillis();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long wait = System.currentTimeMillis() - enqueuedAt;
+            totalQueueTimeMs.addAndGet(wait);
+            long max;
+            while (wait > (max = maxQueueTimeMs.get()) && !maxQueueTimeMs.compareAndSet(max, wait)) {
+                // 重试直到更新最大值
+            }
+            try {
+                task.run();
+            } finally {
+                completed.incrementAndGet();
+            }
         }
     }
-}
\ No newline at end of file
+}
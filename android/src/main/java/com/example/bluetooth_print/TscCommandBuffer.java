@@ -0,0 +1,330 @@
+package com.example.bluetooth_print;
+
+import com.gprinter.command.EscCommand;
+import com.gprinter.command.LabelCommand;
+
+import java.nio.charset.Charset;
+
+/**
+ * TSC 标签指令构建，指令格式与 SDK LabelCommand 保持一致，直接写入原始字节缓冲区
+ */
+public class TscCommandBuffer extends CommandBuffer {
+    private static final Charset CHARSET = Charset.forName("GB18030");
+
+    private static final String CRLF = "\r\n";
+
+    public TscCommandBuffer() {
+        super();
+    }
+
+    public TscCommandBuffer(int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * 写入 "a,b" 形式的参数
+     */
+    private void addPair(int a, int b) {
+        addNumber(a);
+        add(',');
+        addNumber(b);
+    }
+
+    /**
+     * 写入带引号的字符串参数
+     */
+    private void addQuoted(String str) {
+        add('"');
+        addString(str, CHARSET);
+        add('"');
+    }
+
+    /**
+     * 写入内容参数：variable 不为空时引用计数器（@1）或字符串变量（V1$），否则为带引号的 content
+     */
+    private void addField(String content, String variable) {
+        if (variable != null) {
+            addAscii(variable);
+        } else {
+            addQuoted(content);
+        }
+    }
+
+    /**
+     * 标签尺寸 SIZE w mm,h mm
+     */
+    public void addSize(int width, int height) {
+        addAscii("SIZE ");
+        addNumber(width);
+        addAscii(" mm,");
+        addNumber(height);
+        addAscii(" mm" + CRLF);
+    }
+
+    /**
+     * 标签间隙 GAP n mm,0 mm
+     */
+    public void addGap(int gap) {
+        addAscii("GAP ");
+        addNumber(gap);
+        addAscii(" mm,0 mm" + CRLF);
+    }
+
+    /**
+     * 打印方向 DIRECTION n,m
+     */
+    public void addDirection(LabelCommand.DIRECTION direction, LabelCommand.MIRROR mirror) {
+        addAscii("DIRECTION ");
+        addPair(direction.getValue(), mirror.getValue());
+        addAscii(CRLF);
+    }
+
+    /**
+     * 打印完成后自动回传状态 SET RESPONSE ON|OFF
+     */
+    public void addQueryPrinterStatus(LabelCommand.RESPONSE_MODE mode) {
+        addAscii("SET RESPONSE ");
+        addAscii(mode.getValue());
+        addAscii(CRLF);
+    }
+
+    /**
+     * 原点坐标 REFERENCE x,y
+     */
+    public void addReference(int x, int y) {
+        addAscii("REFERENCE ");
+        addPair(x, y);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 打印浓度 DENSITY n
+     */
+    public void addDensity(LabelCommand.DENSITY density) {
+        addAscii("DENSITY ");
+        addNumber(density.getValue());
+        addAscii(CRLF);
+    }
+
+    /**
+     * 撕纸模式 SET TEAR n
+     */
+    public void addTear(EscCommand.ENABLE enable) {
+        addAscii("SET TEAR ");
+        addNumber(enable.getValue());
+        addAscii(CRLF);
+    }
+
+    /**
+     * 清除打印缓冲区 CLS
+     */
+    public void addCls() {
+        addAscii("CLS" + CRLF);
+    }
+
+    /**
+     * 文本 TEXT x,y,"font",rotation,xmul,ymul,"content"
+     */
+    public void addText(int x, int y, LabelCommand.FONTTYPE font, LabelCommand.ROTATION rotation,
+                        LabelCommand.FONTMUL xScale, LabelCommand.FONTMUL yScale, String content) {
+        addText(x, y, font, rotation, xScale, yScale, content, null);
+    }
+
+    public void addText(int x, int y, LabelCommand.FONTTYPE font, LabelCommand.ROTATION rotation,
+                        LabelCommand.FONTMUL xScale, LabelCommand.FONTMUL yScale, String content, String variable) {
+        addAscii("TEXT ");
+        addPair(x, y);
+        add(',');
+        addQuoted(font.getValue());
+        add(',');
+        addNumber(rotation.getValue());
+        add(',');
+        addPair(xScale.getValue(), yScale.getValue());
+        add(',');
+        addField(content, variable);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 一维条码 BARCODE x,y,"type",height,readable,rotation,narrow,wide,"content"
+     */
+    public void add1DBarcode(int x, int y, LabelCommand.BARCODETYPE type, int height, LabelCommand.READABEL readable,
+                             LabelCommand.ROTATION rotation, String content) {
+        add1DBarcode(x, y, type, height, readable, rotation, content, null);
+    }
+
+    public void add1DBarcode(int x, int y, LabelCommand.BARCODETYPE type, int height, LabelCommand.READABEL readable,
+                             LabelCommand.ROTATION rotation, String content, String variable) {
+        addAscii("BARCODE ");
+        addPair(x, y);
+        add(',');
+        addQuoted(type.getValue());
+        add(',');
+        addNumber(height);
+        add(',');
+        addPair(readable.getValue(), rotation.getValue());
+        addAscii(",2,2,");
+        addField(content, variable);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 二维码 QRCODE x,y,level,cellWidth,A,rotation,"content"
+     */
+    public void addQRCode(int x, int y, LabelCommand.EEC level, int cellWidth, LabelCommand.ROTATION rotation, String content) {
+        addQRCode(x, y, level, cellWidth, rotation, content, null);
+    }
+
+    public void addQRCode(int x, int y, LabelCommand.EEC level, int cellWidth, LabelCommand.ROTATION rotation, String content, String variable) {
+        addAscii("QRCODE ");
+        addPair(x, y);
+        add(',');
+        addAscii(level.getValue());
+        add(',');
+        addNumber(cellWidth);
+        addAscii(",A,");
+        addNumber(rotation.getValue());
+        add(',');
+        addField(content, variable);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 位图 BITMAP x,y,widthBytes,height,mode,data，数据为点阵（1 为黑点）中 top 行起 rows 行、字节列 [left, right) 的部分，写出时取反为 TSC 的 1 为白点
+     */
+    public void addBitmap(int x, int y, LabelCommand.BITMAP_MODE mode, byte[] bits, int widthBytes, int left, int right, int top, int rows) {
+        addBitmapPosition(x, y);
+        addPair(right - left, rows);
+        add(',');
+        addNumber(mode.getValue());
+        add(',');
+        addRows(bits, widthBytes, left, right, top, rows, true);
+    }
+
+    private void addBitmapPosition(int x, int y) {
+        addAscii("BITMAP ");
+        addPair(x, y);
+        add(',');
+    }
+
+    /**
+     * 打印 PRINT m,n
+     */
+    public void addPrint(int sets, int copies) {
+        addAscii("PRINT ");
+        addPair(sets, copies);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 计数器 SET COUNTER @n step 及初始值 @n = "start"，每打印一张标签按 step 递增
+     */
+    public void addCounter(int index, int step, String start) {
+        addAscii("SET COUNTER @");
+        addNumber(index);
+        add(' ');
+        addNumber(step);
+        addAscii(CRLF);
+        add('@');
+        addNumber(index);
+        addAscii(" = ");
+        addQuoted(start);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 字符串变量赋值 name="value"
+     */
+    public void addVariable(String name, String value) {
+        addAscii(name);
+        add('=');
+        addQuoted(value);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 下载程序到打印机内存 DOWNLOAD "name"，之后的指令直到 EOP 为程序内容
+     */
+    public void addDownload(String name) {
+        addAscii("DOWNLOAD ");
+        add('"');
+        addAscii(name);
+        add('"');
+        addAscii(CRLF);
+    }
+
+    /**
+     * 程序结束 EOP
+     */
+    public void addEop() {
+        addAscii("EOP" + CRLF);
+    }
+
+    /**
+     * 执行打印机内存中的程序 RUN "name"
+     */
+    public void addRun(String name) {
+        addAscii("RUN ");
+        add('"');
+        addAscii(name);
+        add('"');
+        addAscii(CRLF);
+    }
+
+    /**
+     * 删除打印机内存中的文件 KILL "name"
+     */
+    public void addKill(String name) {
+        addAscii("KILL ");
+        add('"');
+        addAscii(name);
+        add('"');
+        addAscii(CRLF);
+    }
+
+    /**
+     * 下载文件到 Flash DOWNLOAD F,"name",size,data
+     */
+    public void addDownloadFile(String name, byte[] data) {
+        addAscii("DOWNLOAD F,");
+        add('"');
+        addAscii(name);
+        addAscii("\",");
+        addNumber(data.length);
+        add(',');
+        addArray(data);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 打印已下载的 BMP 文件 PUTBMP x,y,"name"
+     */
+    public void addPutBmp(int x, int y, String name) {
+        addAscii("PUTBMP ");
+        addPair(x, y);
+        addAscii(",\"");
+        addAscii(name);
+        add('"');
+        addAscii(CRLF);
+    }
+
+    /**
+     * 蜂鸣器 SOUND level,interval
+     */
+    public void addSound(int level, int interval) {
+        addAscii("SOUND ");
+        addPair(level, interval);
+        addAscii(CRLF);
+    }
+
+    /**
+     * 开钱箱 CASHDRAWER m,t1,t2
+     */
+    public void addCashdrwer(LabelCommand.FOOT foot, int t1, int t2) {
+        addAscii("CASHDRAWER ");
+        addNumber(foot.getValue());
+        add(',');
+        addPair(t1, t2);
+        addAscii(CRLF);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.bluetooth_print;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TSC 应答解码
+ * ESC ! ? 的应答为 1 字节状态，与打印完成回传无法按内容区分，按已发送且未应答的查询数解码；
+ * 没有待应答的查询时，收到的数据视为打印完成回传，每次解码只通知一次
+ */
+public class TscStatusDecoder extends StatusDecoder {
+    private static final int HEAD_OPEN = 0x01;
+    private static final int PAPER_JAM = 0x02;
+    private static final int PAPER_OUT = 0x04;
+    private static final int RIBBON_OUT = 0x08;
+    private static final int PAUSED = 0x10;
+    private static final int PRINTING = 0x20;
+    private static final int ERROR = 0x80;
+
+    /**
+     * 待应答的 ESC ! ? 查询数；查询在发送线程计数，应答在读线程解码
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    @Override
+    public void decode(ResponseRingBuffer in, Sink sink) {
+        while (in.available() > 0 && takePending(pending)) {
+            int b = in.read();
+            sink.onRealtimeStatus(((b & PAPER_OUT) != 0 ? PrinterStatusListener.STATUS_PAPER_OUT : 0)
+                    | ((b & HEAD_OPEN) != 0 ? PrinterStatusListener.STATUS_COVER_OPEN : 0)
+                    | ((b & ERROR) != 0 ? PrinterStatusListener.STATUS_ERROR : 0)
+                    | ((b & PAPER_JAM) != 0 ? PrinterStatusListener.STATUS_PAPER_JAM : 0)
+                    | ((b & RIBBON_OUT) != 0 ? PrinterStatusListener.STATUS_RIBBON_OUT : 0)
+                    | ((b & PAUSED) != 0 ? PrinterStatusListener.STATUS_PAUSED : 0)
+                    | ((b & PRINTING) != 0 ? PrinterStatusListener.STATUS_PRINTING : 0));
+        }
+        if (in.available() > 0) {
+            in.clear();
+            sink.onBufferStatus();
+        }
+    }
+
+    @Override
+    public void expectStatus() {
+        pending.incrementAndGet();
+    }
+
+    @Override
+    public void reset() {
+        pending.set(0);
+    }
+}
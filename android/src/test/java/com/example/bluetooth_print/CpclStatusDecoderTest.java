@@ -0,0 +1,67 @@
+package com.example.bluetooth_print;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CpclStatusDecoderTest {
+
+    @Test
+    public void pendingQueriesDecodeInOrder() {
+        CpclStatusDecoder decoder = new CpclStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        for (int i = 0; i < 4; i++) {
+            decoder.expectStatus();
+        }
+        // ESC h 应答：正常、缺纸、开盖、缺纸且开盖
+        decoder.decode(RecordingSink.bytes(0x00, 0x01, 0x02, 0x03), sink);
+
+        assertEquals(Arrays.asList(0,
+                PrinterStatusListener.STATUS_PAPER_OUT,
+                PrinterStatusListener.STATUS_COVER_OPEN,
+                PrinterStatusListener.STATUS_PAPER_OUT | PrinterStatusListener.STATUS_COVER_OPEN), sink.statuses);
+        assertEquals(0, sink.bufferStatus);
+    }
+
+    @Test
+    public void pendingQueryWaitsForData() {
+        CpclStatusDecoder decoder = new CpclStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        ResponseRingBuffer in = new ResponseRingBuffer(64);
+        decoder.expectStatus();
+        decoder.decode(in, sink);
+        assertTrue(sink.statuses.isEmpty());
+
+        RecordingSink.write(in, 0x02);
+        decoder.decode(in, sink);
+        assertEquals(Collections.singletonList(PrinterStatusListener.STATUS_COVER_OPEN), sink.statuses);
+    }
+
+    @Test
+    public void unsolicitedDataIsOneBufferStatus() {
+        CpclStatusDecoder decoder = new CpclStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        ResponseRingBuffer in = RecordingSink.bytes(0x01, 0x02, 0x03);
+        decoder.decode(in, sink);
+
+        assertTrue(sink.statuses.isEmpty());
+        assertEquals(1, sink.bufferStatus);
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void resetClearsPending() {
+        CpclStatusDecoder decoder = new CpclStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        decoder.expectStatus();
+        decoder.reset();
+        decoder.decode(RecordingSink.bytes(0x01), sink);
+
+        assertTrue(sink.statuses.isEmpty());
+        assertEquals(1, sink.bufferStatus);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.bluetooth_print;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EscCommandScannerTest {
+
+    /**
+     * 超过 64KB 的 NV 图形定义使用 GS 8 L，位图数据中的控制字节不能被当作指令边界
+     */
+    @Test
+    public void defineNvGraphicsOver64KbIsOneCommand() {
+        int widthDots = 576;
+        int height = 1000;
+        byte[] bits = new byte[widthDots / 8 * height];
+        for (int i = 0; i < bits.length; i++) {
+            // 混入 GS、ESC、LF 等控制字节
+            bits[i] = (byte) (i % 3 == 0 ? 0x1D : i % 3 == 1 ? 0x1B : 0x0A);
+        }
+        EscCommandBuffer esc = new EscCommandBuffer();
+        esc.addDefineNvGraphics(33, 34, widthDots, height, bits, 0, bits.length);
+        int defineLength = esc.size();
+        esc.addPrintNvGraphics(33, 34);
+        byte[] data = esc.getCommand();
+
+        assertEquals('8', data[1]);
+        assertEquals(7 + 11 + bits.length, defineLength);
+        assertEquals(defineLength, EscCommandScanner.commandEnd(data, 0, data.length));
+        assertEquals(data.length, EscCommandScanner.commandEnd(data, defineLength, data.length));
+    }
+
+    @Test
+    public void defineNvGraphicsUnder64KbUsesParenthesisForm() {
+        byte[] bits = new byte[48 * 10];
+        EscCommandBuffer esc = new EscCommandBuffer();
+        esc.addDefineNvGraphics(33, 34, 384, 10, bits, 0, bits.length);
+        byte[] data = esc.getCommand();
+
+        assertEquals('(', data[1]);
+        assertEquals(data.length, EscCommandScanner.commandEnd(data, 0, data.length));
+    }
+
+    @Test
+    public void incompleteLongCommandRunsToEnd() {
+        byte[] data = {0x1D, '8', 'L', 0x10, 0x00};
+        assertEquals(data.length, EscCommandScanner.commandEnd(data, 0, data.length));
+    }
+
+    @Test
+    public void textStopsAtNextCommand() {
+        byte[] data = {'a', 'b', 'c', 0x0A, 0x1B, '@'};
+        assertEquals(3, EscCommandScanner.commandEnd(data, 0, data.length));
+        assertEquals(4, EscCommandScanner.commandEnd(data, 3, data.length));
+        assertEquals(6, EscCommandScanner.commandEnd(data, 4, data.length));
+    }
+}
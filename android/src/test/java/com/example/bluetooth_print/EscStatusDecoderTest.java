@@ -0,0 +1,78 @@
+package com.example.bluetooth_print;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class EscStatusDecoderTest {
+
+    /**
+     * DLE EOT n 应答固定位为 0xx1xx10，n=1..4 都按实时状态解码；插件只发送 DLE EOT 2，状态位按脱机状态解释
+     */
+    @Test
+    public void dleEotResponsesAreRealtimeStatus() {
+        EscStatusDecoder decoder = new EscStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        // n=1 联机，n=2 正常，n=3 无错误，n=4 纸张正常
+        decoder.decode(RecordingSink.bytes(0x12, 0x12, 0x12, 0x12), sink);
+
+        assertEquals(Arrays.asList(0, 0, 0, 0), sink.statuses);
+        assertEquals(0, sink.bufferStatus);
+    }
+
+    @Test
+    public void dleEot2OfflineBits() {
+        EscStatusDecoder decoder = new EscStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        // 开盖、缺纸、出错、缺纸且出错
+        decoder.decode(RecordingSink.bytes(0x16, 0x32, 0x52, 0x72), sink);
+
+        assertEquals(Arrays.asList(
+                PrinterStatusListener.STATUS_COVER_OPEN,
+                PrinterStatusListener.STATUS_PAPER_OUT,
+                PrinterStatusListener.STATUS_ERROR,
+                PrinterStatusListener.STATUS_PAPER_OUT | PrinterStatusListener.STATUS_ERROR), sink.statuses);
+    }
+
+    /**
+     * ASB 为 4 字节，后 3 字节即使形如 DLE EOT 或 GS r 应答也要整条跳过，拆分到两次读取时同样
+     */
+    @Test
+    public void asbIsSkippedAcrossReads() {
+        EscStatusDecoder decoder = new EscStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        ResponseRingBuffer in = RecordingSink.bytes(0x30, 0x00);
+        decoder.decode(in, sink);
+        RecordingSink.write(in, 0x12, 0x0F, 0x16);
+        decoder.decode(in, sink);
+
+        assertEquals(Collections.singletonList(PrinterStatusListener.STATUS_COVER_OPEN), sink.statuses);
+        assertEquals(0, sink.bufferStatus);
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void gsR1IsBufferStatus() {
+        EscStatusDecoder decoder = new EscStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        // GS r 1 纸张传感器：纸将尽、正常，中间夹一条 DLE EOT 2
+        decoder.decode(RecordingSink.bytes(0x0C, 0x12, 0x00), sink);
+
+        assertEquals(Collections.singletonList(0), sink.statuses);
+        assertEquals(2, sink.bufferStatus);
+    }
+
+    @Test
+    public void resetDropsPartialAsb() {
+        EscStatusDecoder decoder = new EscStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        decoder.decode(RecordingSink.bytes(0x10), sink);
+        decoder.reset();
+        decoder.decode(RecordingSink.bytes(0x12), sink);
+
+        assertEquals(Collections.singletonList(0), sink.statuses);
+    }
+}
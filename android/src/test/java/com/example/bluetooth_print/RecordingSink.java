@@ -0,0 +1,37 @@
+package com.example.bluetooth_print;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 记录解码结果的 Sink
+ */
+class RecordingSink implements StatusDecoder.Sink {
+    final List<Integer> statuses = new ArrayList<>();
+
+    int bufferStatus;
+
+    @Override
+    public void onRealtimeStatus(int status) {
+        statuses.add(status);
+    }
+
+    @Override
+    public void onBufferStatus() {
+        bufferStatus++;
+    }
+
+    static ResponseRingBuffer bytes(int... values) {
+        ResponseRingBuffer in = new ResponseRingBuffer(64);
+        write(in, values);
+        return in;
+    }
+
+    static void write(ResponseRingBuffer in, int... values) {
+        byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        in.write(data, 0, data.length);
+    }
+}
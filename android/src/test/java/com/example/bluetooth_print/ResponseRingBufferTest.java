@@ -0,0 +1,75 @@
+package com.example.bluetooth_print;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResponseRingBufferTest {
+
+    private static byte[] sequence(int from, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (from + i);
+        }
+        return data;
+    }
+
+    @Test
+    public void readsInOrderAcrossWraparound() {
+        ResponseRingBuffer in = new ResponseRingBuffer(16);
+        in.write(sequence(0, 10), 0, 10);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, in.read());
+        }
+        // 写位置越过数组末尾
+        in.write(sequence(10, 12), 0, 12);
+        assertEquals(12, in.available());
+        assertEquals(10, in.peek(0));
+        assertEquals(21, in.peek(11));
+        for (int i = 10; i < 22; i++) {
+            assertEquals(i, in.read());
+        }
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void overflowDropsOldest() {
+        ResponseRingBuffer in = new ResponseRingBuffer(16);
+        in.write(sequence(0, 20), 0, 20);
+
+        assertEquals(16, in.available());
+        assertEquals(4, in.read());
+    }
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        ResponseRingBuffer in = new ResponseRingBuffer(17);
+        in.write(sequence(0, 40), 0, 40);
+
+        assertEquals(32, in.available());
+        assertEquals(8, in.peek(0));
+    }
+
+    @Test
+    public void bytesAreUnsigned() {
+        ResponseRingBuffer in = new ResponseRingBuffer(16);
+        in.write(new byte[]{(byte) 0xFF, (byte) 0x80}, 0, 2);
+
+        assertEquals(0xFF, in.peek(0));
+        assertEquals(0xFF, in.read());
+        assertEquals(0x80, in.read());
+    }
+
+    @Test
+    public void skipStopsAtAvailable() {
+        ResponseRingBuffer in = new ResponseRingBuffer(16);
+        in.write(sequence(0, 14), 0, 14);
+        in.skip(12);
+        in.write(sequence(14, 6), 0, 6);
+        in.skip(3);
+        assertEquals(15, in.read());
+        in.skip(100);
+        assertEquals(0, in.available());
+        assertEquals(-1, in.read());
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.bluetooth_print;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TscStatusDecoderTest {
+
+    @Test
+    public void pendingQueriesDecodeInOrder() {
+        TscStatusDecoder decoder = new TscStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        decoder.expectStatus();
+        decoder.expectStatus();
+        // 正常；开盖且缺纸
+        decoder.decode(RecordingSink.bytes(0x00, 0x05), sink);
+
+        assertEquals(Arrays.asList(0,
+                PrinterStatusListener.STATUS_COVER_OPEN | PrinterStatusListener.STATUS_PAPER_OUT), sink.statuses);
+        assertEquals(0, sink.bufferStatus);
+    }
+
+    @Test
+    public void statusBits() {
+        TscStatusDecoder decoder = new TscStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        for (int i = 0; i < 4; i++) {
+            decoder.expectStatus();
+        }
+        decoder.decode(RecordingSink.bytes(0x02, 0x08, 0x10, 0xA0), sink);
+
+        assertEquals(Arrays.asList(
+                PrinterStatusListener.STATUS_PAPER_JAM,
+                PrinterStatusListener.STATUS_RIBBON_OUT,
+                PrinterStatusListener.STATUS_PAUSED,
+                PrinterStatusListener.STATUS_PRINTING | PrinterStatusListener.STATUS_ERROR), sink.statuses);
+    }
+
+    @Test
+    public void pendingQueryWaitsForData() {
+        TscStatusDecoder decoder = new TscStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        ResponseRingBuffer in = new ResponseRingBuffer(64);
+        decoder.expectStatus();
+        decoder.decode(in, sink);
+        assertTrue(sink.statuses.isEmpty());
+
+        RecordingSink.write(in, 0x04);
+        decoder.decode(in, sink);
+        assertEquals(Collections.singletonList(PrinterStatusListener.STATUS_PAPER_OUT), sink.statuses);
+    }
+
+    /**
+     * 没有待应答的查询时收到的数据为 SET RESPONSE 的打印完成回传，每次解码只通知一次
+     */
+    @Test
+    public void unsolicitedDataIsOneBufferStatus() {
+        TscStatusDecoder decoder = new TscStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        decoder.expectStatus();
+        ResponseRingBuffer in = RecordingSink.bytes(0x20, 0x00, 0x0D, 0x0A);
+        decoder.decode(in, sink);
+
+        assertEquals(Collections.singletonList(PrinterStatusListener.STATUS_PRINTING), sink.statuses);
+        assertEquals(1, sink.bufferStatus);
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void resetClearsPending() {
+        TscStatusDecoder decoder = new TscStatusDecoder();
+        RecordingSink sink = new RecordingSink();
+        decoder.expectStatus();
+        decoder.reset();
+        decoder.decode(RecordingSink.bytes(0x05), sink);
+
+        assertTrue(sink.statuses.isEmpty());
+        assertEquals(1, sink.bufferStatus);
+    }
+}
@@ -19,6 +19,15 @@ class BluetoothPrint {
   // Getter do stream interno para escutar retornos do canal nativo
   Stream<MethodCall> get methodStream => _methodStreamController.stream;
 
+  /// Eventos das impressoras conectadas: `event` é `command` (dialeto
+  /// detectado), `status` (`paperOut`, `coverOpen`, `error` e, em
+  /// impressoras TSC, `paperJam`, `ribbonOut`, `paused`, `printing`) ou
+  /// `disconnected`; `address` identifica a impressora. Disponível apenas no
+  /// Android.
+  Stream<Map<dynamic, dynamic>> get printerStatus => methodStream
+      .where((call) => call.method == 'PrinterStatus')
+      .map((call) => call.arguments as Map<dynamic, dynamic>);
+
   static final BluetoothPrint _instance = BluetoothPrint._();
   static BluetoothPrint get instance => _instance;
 
@@ -48,36 +57,183 @@ class BluetoothPrint {
     yield* _stateChannel.receiveBroadcastStream().map((s) => s as int);
   }
 
-  Future<dynamic> connect(BluetoothDevice device) =>
-      _channel.invokeMethod('connect', device.toJson());
+  /// Conecta à impressora. Com [autoReconnect], a conexão é mantida com
+  /// keepalive e, se cair, é reaberta automaticamente; os trabalhos em fila
+  /// aguardam a reconexão. Disponível apenas no Android.
+  Future<dynamic> connect(BluetoothDevice device, {bool autoReconnect = true}) =>
+      _channel.invokeMethod(
+          'connect', device.toJson()..['autoReconnect'] = autoReconnect);
+
+  /// Desconecta a impressora [address]; sem [address], desconecta a última
+  /// impressora conectada.
+  Future<dynamic> disconnect({String? address}) =>
+      _channel.invokeMethod('disconnect', _withAddress({}, address));
+
+  /// Endereços das impressoras conectadas no momento. Disponível apenas no
+  /// Android.
+  Future<List<String>> connectedDevices() async {
+    final devices = await _channel.invokeMethod<List<dynamic>>('connectedDevices');
+    return devices?.cast<String>() ?? <String>[];
+  }
+
+  /// Acrescenta o endereço da impressora de destino aos argumentos. Cada
+  /// impressora tem sua própria fila no lado nativo, então trabalhos para
+  /// impressoras diferentes são enviados em paralelo.
+  static Map<String, dynamic> _withAddress(
+      Map<String, dynamic> args, String? address,
+      [PrintPriority? priority]) {
+    if (address != null) {
+      args['address'] = address;
+    }
+    if (priority != null) {
+      args['priority'] = priority.toString().split('.').last;
+    }
+    return args;
+  }
+
+  /// Detecção de dialeto da impressora [address]: `printerCommand`,
+  /// `detectionMs` (tempo até identificar o dialeto), `detectedFromCache` e
+  /// `probeRttMs`; reconexão automática: `reconnects`, `failedAttempts`,
+  /// `totalDowntimeMs`, `lastDowntimeMs`, `keepalivesSent`,
+  /// `keepalivesMissed`. Disponível apenas no Android.
+  Future<Map<dynamic, dynamic>?> connectionStats({String? address}) =>
+      _channel.invokeMethod<Map<dynamic, dynamic>>(
+          'connectionStats', _withAddress({}, address));
 
-  Future<dynamic> disconnect() => _channel.invokeMethod('disconnect');
+  /// Profundidade da fila e tempos de espera (médio e máximo, em ms) por
+  /// prioridade (`system`, `high`, `expedited`, `normal`, `low`) da
+  /// impressora [address]; trabalhos com [PrintPriority.high] aparecem em
+  /// `expedited`. A chave
+  /// `executor` traz os contadores do pool de threads compartilhado
+  /// (ativas, enfileiradas, rejeitadas, tempo em fila). Quando a fila está
+  /// cheia, as chamadas de impressão falham com o código `queue_full`.
+  /// Disponível apenas no Android.
+  Future<Map<dynamic, dynamic>?> queueStats({String? address}) =>
+      _channel.invokeMethod<Map<dynamic, dynamic>>(
+          'queueStats', _withAddress({}, address));
 
   Future<dynamic> destroy() => _channel.invokeMethod('destroy');
 
+  /// Imprime um recibo. No Android, `dither` no [config] escolhe como as
+  /// imagens viram pontos pretos e brancos: `ordered` (padrão),
+  /// `threshold` (texto e traços) ou `diffusion` (fotos). `codepage` escolhe
+  /// a página de código dos textos (veja [setCodePage]).
   Future<dynamic> printReceipt(
-      Map<String, dynamic> config, List<LineText> data) {
-    final args = {
+      Map<String, dynamic> config, List<LineText> data,
+      {String? address, PrintPriority? priority}) {
+    final args = <String, dynamic>{
       'config': config,
-      'data': data.map((e) => e.toJson()).toList(),
+      'data': _encodeLines(data),
+    };
+    return _channel.invokeMethod(
+        'printReceipt', _withAddress(args, address, priority));
+  }
+
+  /// Imprime uma etiqueta. Além de `width`, `height` e `gap` (mm), o
+  /// [config] aceita:
+  /// * `sets` e `copies`: `PRINT sets,copies`, ou seja, `sets` etiquetas
+  ///   (os contadores avançam a cada uma), `copies` cópias de cada;
+  /// * `counters`: lista de `{'start': '0001', 'step': 1}`, referenciados
+  ///   pelas linhas com [LineText.name] `@1`, `@2`...;
+  /// * `records`: lista de mapas `{nome: valor}`. O corpo da etiqueta é
+  ///   enviado uma única vez e, por registro, só os valores das linhas cujo
+  ///   [LineText.name] aparece no mapa;
+  /// * `dither`: como em [printReceipt].
+  Future<dynamic> printLabel(Map<String, dynamic> config, List<LineText> data,
+      {String? address, PrintPriority? priority}) {
+    final args = <String, dynamic>{
+      'config': config,
+      'data': _encodeLines(data),
     };
-    return _channel.invokeMethod('printReceipt', args);
+    return _channel.invokeMethod(
+        'printLabel', _withAddress(args, address, priority));
   }
 
-  Future<dynamic> printLabel(Map<String, dynamic> config, List<LineText> data) {
+  /// No Android as linhas vão no formato binário compacto
+  /// ([LineText.pack]); nas demais plataformas, como lista de mapas.
+  static Object _encodeLines(List<LineText> data) => Platform.isAndroid
+      ? LineText.pack(data)
+      : data.map((e) => e.toJson()).toList();
+
+  /// Envia vários trabalhos, possivelmente para impressoras diferentes, em
+  /// uma única chamada. Os trabalhos de uma mesma impressora são enfileirados
+  /// juntos e impressos em sequência; a lista retornada tem um resultado por
+  /// trabalho, na ordem de [jobs]. Disponível apenas no Android.
+  Future<List<PrintJobResult>> printBatch(List<PrintJob> jobs,
+      {PrintPriority? priority}) async {
+    final args = <String, dynamic>{
+      'jobs': jobs
+          .map((e) => e.toJson()..['data'] = LineText.pack(e.data))
+          .toList(),
+    };
+    final results = await _channel.invokeMethod<List<dynamic>>(
+        'printBatch', _withAddress(args, null, priority));
+    return (results ?? <dynamic>[])
+        .map((e) => PrintJobResult.fromJson(e as Map<dynamic, dynamic>))
+        .toList();
+  }
+
+  /// Esquece as imagens residentes já enviadas à impressora [address]; os
+  /// próximos trabalhos as enviam de novo. Use depois de resetar a impressora
+  /// ou apagar sua memória NV/Flash. Disponível apenas no Android.
+  Future<dynamic> resetAssets({String? address}) =>
+      _channel.invokeMethod('resetAssets', _withAddress({}, address));
+
+  /// Define a página de código usada nos textos de recibo da impressora
+  /// [address]: `gbk`, `cp437`, `cp850`, `cp860` (português) ou `cp1252`.
+  /// Vale para os trabalhos cujo `config` não traz `codepage`; `null` volta
+  /// ao padrão (`gbk`). Disponível apenas no Android.
+  Future<dynamic> setCodePage(String? codePage, {String? address}) =>
+      _channel.invokeMethod(
+          'setCodePage', _withAddress({'codePage': codePage}, address));
+
+  /// Registra um template de impressão. As linhas do tipo
+  /// [LineText.TYPE_SLOT] marcam as posições variáveis; o restante é
+  /// codificado uma única vez no lado nativo. Imagens com nome não ficam
+  /// residentes na impressora: em templates elas são sempre enviadas junto
+  /// com o trabalho. Disponível apenas no Android.
+  Future<dynamic> registerTemplate(
+      String id, Map<String, dynamic> config, List<LineText> data) {
     final args = {
+      'id': id,
       'config': config,
       'data': data.map((e) => e.toJson()).toList(),
     };
-    return _channel.invokeMethod('printLabel', args);
+    return _channel.invokeMethod('registerTemplate', args);
   }
 
-  Future<dynamic> printTest() => _channel.invokeMethod('printTest');
+  /// Remove um template registrado.
+  Future<dynamic> unregisterTemplate(String id) =>
+      _channel.invokeMethod('unregisterTemplate', {'id': id});
 
-  Future<bool> openCashDrawer({int m = 0, int t1 = 25, int t2 = 250}) async {
+  /// Imprime um template registrado enviando apenas o conteúdo de cada
+  /// posição variável, indexado pelo nome do slot.
+  Future<dynamic> printTemplate(String id, Map<String, List<LineText>> slots,
+      {String? address, PrintPriority? priority}) {
+    final args = <String, dynamic>{
+      'id': id,
+      'slots': slots.map(
+          (name, lines) => MapEntry(name, lines.map((e) => e.toJson()).toList())),
+    };
+    return _channel.invokeMethod(
+        'printTemplate', _withAddress(args, address, priority));
+  }
+
+  Future<dynamic> printTest({String? address}) =>
+      _channel.invokeMethod('printTest', _withAddress({}, address));
+
+  /// Estatísticas do cache de trabalhos já codificados (hits, misses,
+  /// evictions, entries, bytes, maxBytes). A chave `raster` traz os mesmos
+  /// contadores para o cache de imagens rasterizadas. Disponível apenas no
+  /// Android.
+  Future<Map<dynamic, dynamic>?> cacheStats() =>
+      _channel.invokeMethod<Map<dynamic, dynamic>>('cacheStats');
+
+  Future<bool> openCashDrawer(
+      {int m = 0, int t1 = 25, int t2 = 250, String? address}) async {
     try {
       if (Platform.isAndroid) {
-        await _channel.invokeMethod('openCashDrawer');
+        await _channel.invokeMethod('openCashDrawer', _withAddress({}, address));
       } else if (Platform.isIOS) {
         await _channel.invokeMethod('openCashDrawer', {
           'm': m,
@@ -149,6 +305,17 @@ class BluetoothPrint {
   }
 }
 
+/// Prioridade de um trabalho na fila da impressora. [high] só passa à
+/// frente dos trabalhos na fila, sem interromper o que está imprimindo;
+/// apenas comandos de controle (gaveta, consulta de status) são enviados
+/// entre os comandos de um trabalho em andamento. Use [low] para relatórios
+/// e reimpressões.
+enum PrintPriority {
+  high,
+  normal,
+  low,
+}
+
 enum BluetoothState {
   unknown,
   off,
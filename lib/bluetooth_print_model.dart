@@ -1,3 +1,6 @@
+import 'dart:convert';
+import 'dart:typed_data';
+
 /// Representa um dispositivo Bluetooth detectado ou emparelhado.
 class BluetoothDevice {
   /// Nome do dispositivo (pode ser nulo).
@@ -52,6 +55,9 @@ class LineText {
   static const String TYPE_QRCODE = 'qrcode';
   static const String TYPE_IMAGE = 'image';
 
+  /// Posição variável de um template (ver [BluetoothPrint.registerTemplate])
+  static const String TYPE_SLOT = 'slot';
+
   // Constantes para alinhamento de texto
   static const int ALIGN_LEFT = 0;
   static const int ALIGN_CENTER = 1;
@@ -99,6 +105,19 @@ class LineText {
   /// Coordenada Y para impressão gráfica
   final int? y;
 
+  /// Nome da posição variável quando [type] é [TYPE_SLOT]. Em etiquetas
+  /// (TSC), `@1`, `@2`... usa o contador correspondente de `counters` e
+  /// qualquer outro nome usa o campo de mesmo nome de cada item de `records`
+  /// (ver [BluetoothPrint.printLabel]). Em imagens ([TYPE_IMAGE]), marca a
+  /// imagem como residente: é enviada à impressora uma única vez (NV no
+  /// ESC/POS, arquivo BMP na Flash no TSC) e, depois, só referenciada
+  /// (ver [BluetoothPrint.resetAssets]).
+  final String? name;
+
+  /// Imagem longa enviada em faixas durante a rasterização (0=não, 1=sim).
+  /// Apenas recibos (ESC) no Android.
+  final int? stream;
+
   /// Construtor com valores padrão para facilitar o uso.
   LineText({
     this.type,
@@ -115,6 +134,8 @@ class LineText {
     this.linefeed = 0,
     this.x = 0,
     this.y = 0,
+    this.name,
+    this.stream,
   });
 
   /// Cria uma instância a partir de um mapa JSON.
@@ -134,9 +155,61 @@ class LineText {
       linefeed: json['linefeed'] as int?,
       x: json['x'] as int?,
       y: json['y'] as int?,
+      name: json['name'] as String?,
+      stream: json['stream'] as int?,
     );
   }
 
+  static const List<String> _packedTypes = [
+    TYPE_TEXT,
+    TYPE_BARCODE,
+    TYPE_QRCODE,
+    TYPE_IMAGE
+  ];
+
+  /// Codifica as linhas no formato binário compacto lido pelo
+  /// `PackedLineReader` do Android: cabeçalho `B` `P` versão reservado e,
+  /// por linha, 20 bytes de campos fixos (big-endian) seguidos do conteúdo
+  /// e do [name] em UTF-8. Um único [Uint8List] atravessa o canal sem o custo de um mapa
+  /// por linha. Linhas [TYPE_SLOT] não são suportadas; templates continuam
+  /// usando [toJson].
+  static Uint8List pack(List<LineText> lines) {
+    final builder = BytesBuilder(copy: false);
+    builder.add(const [0x42, 0x50, 1, 0]);
+    for (final line in lines) {
+      final content = line.content == null ? null : utf8.encode(line.content!);
+      final name = line.name == null ? null : utf8.encode(line.name!);
+      if (name != null && name.length > 0xFF) {
+        throw ArgumentError.value(line.name, 'name', 'mais de 255 bytes');
+      }
+      final header = ByteData(20);
+      final type = _packedTypes.indexOf(line.type ?? '');
+      header.setUint8(0, type < 0 ? 0xFF : type);
+      var flags = 0;
+      if ((line.weight ?? 0) != 0) flags |= 1;
+      if ((line.height ?? 0) != 0) flags |= 1 << 1;
+      if ((line.underline ?? 0) != 0) flags |= 1 << 2;
+      if (line.linefeed == 1) flags |= 1 << 3;
+      if (line.stream == 1) flags |= 1 << 4;
+      header.setUint8(1, flags);
+      header.setUint8(2, line.align ?? ALIGN_LEFT);
+      final size = line.size;
+      header.setUint8(3, size == null ? 0xFF : (size > 0xFE ? 0xFE : size));
+      header.setUint8(4, line.fontZoom ?? 1);
+      header.setUint8(5, name?.length ?? 0);
+      header.setInt16(6, line.absolutePos ?? 0);
+      header.setInt16(8, line.relativePos ?? 0);
+      header.setUint16(10, line.width ?? 0);
+      header.setUint16(12, line.x ?? 0);
+      header.setUint16(14, line.y ?? 0);
+      header.setUint32(16, content == null ? 0xFFFFFFFF : content.length);
+      builder.add(header.buffer.asUint8List());
+      if (content != null) builder.add(content);
+      if (name != null) builder.add(name);
+    }
+    return builder.takeBytes();
+  }
+
   /// Converte esta instância para JSON.
   Map<String, dynamic> toJson() {
     final Map<String, dynamic> data = {};
@@ -154,6 +227,47 @@ class LineText {
     if (linefeed != null) data['linefeed'] = linefeed;
     if (x != null) data['x'] = x;
     if (y != null) data['y'] = y;
+    if (name != null) data['name'] = name;
+    if (stream != null) data['stream'] = stream;
     return data;
   }
 }
+
+/// Um trabalho de impressão enviado em lote por [BluetoothPrint.printBatch].
+/// Sem [address], vai para a impressora conectada por último.
+class PrintJob {
+  final Map<String, dynamic> config;
+  final List<LineText> data;
+  final String? address;
+
+  PrintJob(this.config, this.data, {this.address});
+
+  /// Converte esta instância para JSON.
+  Map<String, dynamic> toJson() {
+    final Map<String, dynamic> json = {
+      'config': config,
+      'data': data.map((e) => e.toJson()).toList(),
+    };
+    if (address != null) json['address'] = address;
+    return json;
+  }
+}
+
+/// Resultado de um trabalho do lote, na mesma posição da lista enviada.
+class PrintJobResult {
+  final bool ok;
+
+  /// Código do erro (`not connect`, `queue_full`, `write failed`,
+  /// `cancelled` quando a fila é descartada antes da impressão, ...)
+  /// quando [ok] é falso.
+  final String? error;
+
+  PrintJobResult({required this.ok, this.error});
+
+  factory PrintJobResult.fromJson(Map<dynamic, dynamic> json) {
+    return PrintJobResult(
+      ok: json['ok'] == true,
+      error: json['error'] as String?,
+    );
+  }
+}